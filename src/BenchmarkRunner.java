@@ -0,0 +1,297 @@
+import dao.FlightDao;
+import dao.FlightRowMapper;
+import dao.SeatReservationDao;
+import dao.TicketDao;
+import dto.Passenger;
+import entity.Flight;
+import entity.Ticket;
+import org.postgresql.PGConnection;
+import util.ConnectionManager;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>Замеры производительности</h1>
+ * Подключать JMH в этот проект не стали, поэтому замеры простые: прогрев, потом несколько итераций с
+ * {@code System.nanoTime()} и вывод среднего времени на одну операцию. Для сравнения двух вариантов между собой этого
+ * достаточно, но абсолютные цифры стоит воспринимать с осторожностью.
+ */
+public class BenchmarkRunner {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 5;
+
+    public static void main(String[] args) throws SQLException, InterruptedException {
+        try {
+            connectionWrapperBenchmark();
+            // saveAllBenchmark(1L, 10_000);
+            // flightCacheBenchmark(1L);
+            // seatReservationLoadTest(1L, 50, 2);
+            // rowMapperBenchmark();
+        } finally {
+            ConnectionManager.closePool();
+        }
+    }
+
+    /**
+     * <h1>Proxy против PooledConnection</h1>
+     * Сравниваем старую обёртку соединения через {@code java.lang.reflect.Proxy} с {@code PooledConnection}, который
+     * сейчас выдаёт {@code ConnectionManager.get()}. Вызываем {@code getAutoCommit()} - драйвер отвечает на него без
+     * похода в базу, поэтому замеряется именно стоимость обёртки.
+     */
+    private static void connectionWrapperBenchmark() throws SQLException {
+        int operations = 1_000_000;
+
+        try (Connection pooled = ConnectionManager.get()) {
+            Connection source = (Connection) pooled.unwrap(PGConnection.class);
+            Connection proxy = (Connection) Proxy.newProxyInstance(
+                    BenchmarkRunner.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    ((p, method, args) -> method.getName().equals("close")
+                            ? null
+                            : method.invoke(source, args)
+                    )
+            );
+
+            measure("Proxy", operations, () -> callGetAutoCommit(proxy, operations));
+            measure("PooledConnection", operations, () -> callGetAutoCommit(pooled, operations));
+        }
+    }
+
+    /**
+     * <h1>save() в цикле против saveAll()</h1>
+     * Сохраняем {@code count} билетов на перелёт {@code flightId} тремя способами и после каждого замера удаляем
+     * созданные билеты. Замер однократный - тут каждый вариант и так идёт секунды, а не наносекунды.
+     */
+    private static void saveAllBenchmark(Long flightId, int count) {
+        TicketDao ticketDao = TicketDao.getInstance();
+        Flight flight = FlightDao.getInstance().findById(flightId).orElseThrow();
+
+        List<Ticket> loop = newTickets(flight, count);
+        long start = System.nanoTime();
+        for (Ticket ticket : loop) {
+            ticketDao.save(ticket);
+        }
+        report("save() loop", count, System.nanoTime() - start);
+        loop.forEach(ticket -> ticketDao.delete(ticket.getId()));
+
+        List<Ticket> batch = newTickets(flight, count);
+        start = System.nanoTime();
+        ticketDao.saveAll(batch);
+        report("saveAll() batch", count, System.nanoTime() - start);
+        batch.forEach(ticket -> ticketDao.delete(ticket.getId()));
+
+        List<Ticket> multiRow = newTickets(flight, count);
+        start = System.nanoTime();
+        ticketDao.saveAll(multiRow, TicketDao.DEFAULT_BATCH_SIZE, true);
+        report("saveAll() multi-row", count, System.nanoTime() - start);
+        multiRow.forEach(ticket -> ticketDao.delete(ticket.getId()));
+    }
+
+    /**
+     * <h1>Кеш перелётов</h1>
+     * {@code findById(key)} после первого вызова отвечает из кеша, а {@code findById(key, connection)} всегда идёт в
+     * базу. Соединение для второго варианта берём одно на весь замер, чтобы не мерить заодно и пул.
+     */
+    private static void flightCacheBenchmark(Long flightId) throws SQLException {
+        FlightDao flightDao = FlightDao.getInstance();
+        int cachedOperations = 1_000_000;
+        int databaseOperations = 1_000;
+
+        measure("cache hit", cachedOperations, () -> {
+            long found = 0;
+            for (int i = 0; i < cachedOperations; i++) {
+                found += flightDao.findById(flightId).map(Flight::aircraftId).orElse(0);
+            }
+            return found;
+        });
+        try (Connection connection = ConnectionManager.get()) {
+            measure("database", databaseOperations, () -> {
+                long found = 0;
+                for (int i = 0; i < databaseOperations; i++) {
+                    found += flightDao.findById(flightId, connection).map(Flight::aircraftId).orElse(0);
+                }
+                return found;
+            });
+        }
+        System.out.println(flightDao.cacheStats());
+    }
+
+    /**
+     * <h1>Нагрузочный тест бронирования</h1>
+     * {@code buyers} покупателей одновременно бронируют по {@code seatsPerBuyer} мест на один перелёт. Потоков вдвое
+     * больше, чем соединений в пуле, чтобы покупатели действительно конкурировали. В конце удаляем созданные билеты
+     * и бросаем {@link IllegalStateException}, если:
+     * <ul>
+     *     <li>покупатели не уложились в минуту</li>
+     *     <li>какое-то место продано дважды</li>
+     *     <li>проданные и отклонённые места не сходятся с запрошенными, т.е. бронирование продало часть мест
+     *     покупателю, а не "всё или ничего"</li>
+     * </ul>
+     */
+    private static void seatReservationLoadTest(Long flightId, int buyers, int seatsPerBuyer)
+            throws InterruptedException {
+        SeatReservationDao reservationDao = SeatReservationDao.getInstance();
+        List<Ticket> sold = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(ConnectionManager.poolSize() * 2);
+
+        long start = System.nanoTime();
+        for (int buyer = 0; buyer < buyers; buyer++) {
+            List<Passenger> passengers = new ArrayList<>(seatsPerBuyer);
+            for (int i = 0; i < seatsPerBuyer; i++) {
+                passengers.add(new Passenger("LOAD" + buyer + "-" + i, "Load Test Passenger"));
+            }
+            executor.execute(() -> {
+                List<Ticket> tickets = reservationDao.reserve(flightId, passengers, BigDecimal.valueOf(100));
+                if (tickets.isEmpty()) {
+                    rejected.incrementAndGet();
+                }
+                sold.addAll(tickets);
+            });
+        }
+        executor.shutdown();
+        boolean finished = executor.awaitTermination(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+
+        try {
+            if (!finished) {
+                executor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+                throw new IllegalStateException("Reservations did not finish in 1 minute");
+            }
+            long distinctSeats = sold.stream().map(Ticket::getSeatNo).distinct().count();
+            report("reserve()", buyers, elapsed);
+            System.out.printf("sold=%d distinct=%d rejected=%d%n", sold.size(), distinctSeats, rejected.get());
+
+            if (distinctSeats != sold.size()) {
+                throw new IllegalStateException(
+                        "%d seats sold more than once".formatted(sold.size() - distinctSeats));
+            }
+            long requested = (long) buyers * seatsPerBuyer;
+            long accounted = sold.size() + (long) rejected.get() * seatsPerBuyer;
+            if (accounted != requested) {
+                throw new IllegalStateException("Requested %d seats, but sold %d and rejected %d buyers"
+                        .formatted(requested, sold.size(), rejected.get()));
+            }
+        } finally {
+            TicketDao ticketDao = TicketDao.getInstance();
+            sold.forEach(ticket -> ticketDao.delete(ticket.getId()));
+        }
+    }
+
+    /**
+     * <h1>Колонки по имени против колонок по номеру</h1>
+     * Результат запроса читаем один раз в прокручиваемый {@link ResultSet} и на каждой итерации проходим его заново
+     * через {@code beforeFirst()} - так в замер не попадает поход в базу, а только сборка перелётов из строк.
+     * Первый вариант - как раньше в {@code FlightDao.buildFlight()}: {@code getXxx("column")} на каждую колонку
+     * каждой строки. Второй - {@link FlightRowMapper}, который находит номера колонок один раз.
+     */
+    private static void rowMapperBenchmark() throws SQLException {
+        String sql = """
+                SELECT id, flight_no, departure_date, departure_airport_code, arrival_date, arrival_airport_code,
+                aircraft_id, status
+                FROM flight_storage.flight
+                """;
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                ResultSet resultSet = preparedStatement.executeQuery();
+        ) {
+            int rows = 0;
+            while (resultSet.next()) {
+                rows++;
+            }
+            if (rows == 0) {
+                System.out.println("flight_storage.flight is empty");
+                return;
+            }
+            int operations = rows;
+
+            measure("by name", operations, () -> {
+                long found = 0;
+                resultSet.beforeFirst();
+                while (resultSet.next()) {
+                    Flight flight = new Flight(
+                            resultSet.getLong("id"),
+                            resultSet.getString("flight_no"),
+                            resultSet.getTimestamp("departure_date").toLocalDateTime(),
+                            resultSet.getString("departure_airport_code"),
+                            resultSet.getTimestamp("arrival_date").toLocalDateTime(),
+                            resultSet.getString("arrival_airport_code"),
+                            resultSet.getInt("aircraft_id"),
+                            resultSet.getString("status")
+                    );
+                    found += flight.aircraftId();
+                }
+                return found;
+            });
+            measure("by index", operations, () -> {
+                long found = 0;
+                // Маппер на каждую итерацию - номера колонок ищутся так же, как на каждый запрос в DAO
+                FlightRowMapper mapper = new FlightRowMapper();
+                resultSet.beforeFirst();
+                while (resultSet.next()) {
+                    found += mapper.map(resultSet).aircraftId();
+                }
+                return found;
+            });
+        }
+    }
+
+    private static List<Ticket> newTickets(Flight flight, int count) {
+        List<Ticket> tickets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tickets.add(new Ticket(null, "BENCH" + i, "Benchmark Passenger", flight, "B" + (i % 100),
+                    BigDecimal.valueOf(100)));
+        }
+        return tickets;
+    }
+
+    private static void report(String name, int rows, long elapsedNanos) {
+        System.out.printf("%-20s %10.0f rows/s (%d ms)%n",
+                name, rows / (elapsedNanos / 1_000_000_000.0), elapsedNanos / 1_000_000);
+    }
+
+    private static long callGetAutoCommit(Connection connection, int operations) throws SQLException {
+        long trueCount = 0;
+        for (int i = 0; i < operations; i++) {
+            if (connection.getAutoCommit()) {
+                trueCount++;
+            }
+        }
+        return trueCount;
+    }
+
+    private static void measure(String name, int operations, Benchmark benchmark) throws SQLException {
+        // Результат копим, чтобы JIT не выкинул вызовы как неиспользуемые
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            blackhole += benchmark.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            blackhole += benchmark.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        double nanosPerOperation = (double) elapsed / MEASURE_ITERATIONS / operations;
+        System.out.printf("%-20s %10.2f ns/op (%d)%n", name, nanosPerOperation, blackhole);
+    }
+
+    @FunctionalInterface
+    private interface Benchmark {
+        long run() throws SQLException;
+    }
+}
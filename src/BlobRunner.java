@@ -1,4 +1,8 @@
+import bulk.ImageImportResult;
+import bulk.ImageImporter;
+import dao.AircraftImageDao;
 import util.ConnectionManager;
+import util.SchemaCatalog;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -8,6 +12,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * <h1>Blob & Clob</h1>
@@ -33,11 +38,17 @@ import java.sql.SQLException;
  * По-хорошему, не следует большие объекты ложить в базу данных. Это гораздо замедляет работу всех баз данных и все
  * запросы. Как правило, большие объекты (картинки, видео и т.д.) хранятся в сторонних хранилищах, а в базе данных
  * только ссылка на них.
+ * <br><br>
+ * Здесь картинка дважды целиком лежит в памяти: {@code Files.readAllBytes()} + {@code setBytes()} и
+ * {@code getBytes()} + {@code Files.write()}. Вариант с потоками и с Large Object, где память не зависит от размера
+ * картинки, - {@code dao.AircraftImageDao}.
  */
 public class BlobRunner {
     public static void main(String[] args) {
         // alterColumnToAircraft();
+        // addImageMd5Column();
         // saveImage();
+        // importImages(Path.of("resources", "images"));
         getImage();
     }
 
@@ -68,9 +79,10 @@ public class BlobRunner {
      * }</pre>
      */
     private static void saveImage() {
-        String sql = """
-                UPDATE flight_storage.aircraft SET image = ? WHERE id = 1
-                """;
+        // md5 картинки теперь другой - обнуляем его, чтобы база посчитала заново (см. addImageMd5Column())
+        String sql = SchemaCatalog.getInstance().hasColumn("aircraft", "image_md5")
+                ? "UPDATE flight_storage.aircraft SET image = ?, image_md5 = NULL WHERE id = 1"
+                : "UPDATE flight_storage.aircraft SET image = ? WHERE id = 1";
         try (
                 Connection connection = ConnectionManager.get();
                 PreparedStatement preparedStatement = connection.prepareStatement(sql);
@@ -105,6 +117,65 @@ public class BlobRunner {
         }
     }
 
+    /**
+     * <h1>Загрузка картинок всего парка</h1>
+     * Загружаем все картинки из каталога параллельно, id самолёта - в начале имени файла ({@code 1-Boeing777.jpg}).
+     * Подробности - в {@code bulk.ImageImporter}.
+     */
+    private static void importImages(Path directory) {
+        try {
+            ImageImportResult result = ImageImporter.of(AircraftImageDao.getInstance()).importDirectory(directory);
+            System.out.println(result);
+            result.failed().forEach(file -> System.out.println("Failed: " + file));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Колонка для картинки в виде Large Object: в самой строке лежит только oid, а содержимое - в
+     * {@code pg_largeobject}.
+     */
+    private static void addImageOidColumn() {
+        String sql = "ALTER TABLE flight_storage.aircraft ADD COLUMN IF NOT EXISTS image_oid OID;";
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)
+        ) {
+            preparedStatement.execute();
+
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        // схема поменялась - перечитываем её
+        SchemaCatalog.getInstance().refresh();
+    }
+
+    /**
+     * md5 картинки из {@code image}, чтобы {@code AircraftImageCache} не заставлял базу читать всю картинку ради
+     * {@code md5()} на каждом запросе. Заполняем его для уже сохранённых картинок, дальше его пишет
+     * {@code AircraftImageDao.saveImage()}.
+     */
+    private static void addImageMd5Column() {
+        String alterSql = "ALTER TABLE flight_storage.aircraft ADD COLUMN IF NOT EXISTS image_md5 CHAR(32);";
+        String fillSql = """
+                UPDATE flight_storage.aircraft SET image_md5 = md5(image)
+                WHERE image IS NOT NULL AND image_md5 IS NULL
+                """;
+        try (
+                Connection connection = ConnectionManager.get();
+                Statement statement = connection.createStatement()
+        ) {
+            statement.execute(alterSql);
+            statement.executeUpdate(fillSql);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        // схема поменялась - перечитываем её
+        SchemaCatalog.getInstance().refresh();
+    }
+
     private static void alterColumnToAircraft() {
         String sql = "ALTER TABLE flight_storage.aircraft ADD image BYTEA;";
         try (
@@ -116,5 +187,7 @@ public class BlobRunner {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        // схема поменялась - перечитываем её
+        SchemaCatalog.getInstance().refresh();
     }
 }
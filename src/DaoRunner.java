@@ -1,10 +1,16 @@
+import dao.AsyncDao;
 import dao.TicketDao;
+import dto.Page;
 import dto.TicketFilter;
 import entity.Ticket;
+import util.TransactionDefinition;
+import util.TransactionManager;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class DaoRunner {
     public static void main(String[] args) {
@@ -21,6 +27,51 @@ public class DaoRunner {
         }
     }
 
+    private static void pageTest() {
+        TicketDao ticketDao = TicketDao.getInstance();
+        TicketFilter ticketFilter = new TicketFilter(3, 0, null, null);
+
+        Page<Ticket> page = ticketDao.findPage(ticketFilter);
+        page.items().forEach(System.out::println);
+        while (page.hasNext()) {
+            page = ticketDao.findPage(ticketFilter.after(page.nextToken()));
+            page.items().forEach(System.out::println);
+        }
+    }
+
+    private static void asyncFindTest(List<Long> ids) {
+        AsyncDao<Long, Ticket> ticketDao = AsyncDao.of(TicketDao.getInstance());
+
+        List<CompletableFuture<Optional<Ticket>>> futures = ids.stream()
+                .map(ticketDao::findById)
+                .toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        for (CompletableFuture<Optional<Ticket>> future : futures) {
+            System.out.println(future.join());
+        }
+    }
+
+    /**
+     * Меняем местами места двух билетов: оба update выполняются в одной транзакции, хотя каждый из них сам берёт
+     * соединение через {@code ConnectionManager.get()}.
+     */
+    private static void swapSeatsTest(Long firstId, Long secondId) {
+        TicketDao ticketDao = TicketDao.getInstance();
+        TransactionDefinition definition = TransactionDefinition.DEFAULT
+                .isolation(Connection.TRANSACTION_SERIALIZABLE);
+
+        TransactionManager.runInTransaction(definition, () -> {
+            Ticket first = ticketDao.findById(firstId).orElseThrow();
+            Ticket second = ticketDao.findById(secondId).orElseThrow();
+            String seatNo = first.getSeatNo();
+            first.setSeatNo(second.getSeatNo());
+            second.setSeatNo(seatNo);
+            ticketDao.update(first);
+            ticketDao.update(second);
+        });
+    }
+
     private static void findAllTest() {
         List<Ticket> tickets = TicketDao.getInstance().findAll();
         for (Ticket ticket :
@@ -1,6 +1,8 @@
 import util.ConnectionManager;
+import util.IndexMetadata;
+import util.SchemaCatalog;
+import util.TableMetadata;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
@@ -10,45 +12,70 @@ import java.util.List;
 public class JdbcRunner {
     public static void main(String[] args) {
         try {
+            // addTicketVersionColumn();
+            // addTicketSeatIndex();
             checkMetaData();
         } finally {
             ConnectionManager.closePool();
         }
     }
 
+    /**
+     * <h1>Мета-данные схемы flight_storage</h1>
+     * Раньше здесь перебирались все каталоги ({@code getCatalogs()}), для каждого - все схемы ({@code getSchemas()}),
+     * и для каждой схемы вызывался {@code getTables()}, даже если схема нам не нужна. Каждый такой вызов - запрос в
+     * системные таблицы postgres. Теперь схема читается один раз в {@link SchemaCatalog} (таблицы, колонки, первичные
+     * ключи, индексы), а дальше всё берётся из памяти.
+     */
     private static void checkMetaData() {
-        try (var connection = ConnectionManager.get()) {
-            // Получаем мета-данные
-            var metaData = connection.getMetaData();
-            // Получаем все каталоги из мета-данных, на выходе получаем ResultSet, СМОТРЕТЬ ДОКУМЕНТАЦИЮ
-            ResultSet catalogs = metaData.getCatalogs();
-
-            // Берём все сущности из схемы flight_storage
-            // Проходимся по каталогам
-            while (catalogs.next()) {
-                // Получаем название каталога
-                String catalog = catalogs.getString(1);
-                // Получаем схемы каталога
-                ResultSet schemas = metaData.getSchemas();
-
-                // Проходимся по схемах каталога
-                while (schemas.next()) {
-                    // Получаем название схемы каталога
-                    String schema = schemas.getString("TABLE_SCHEM");
-                    // Получаем все сущности схемы каталога
-                    ResultSet tables = metaData.getTables(catalog, schema, "%", null);
-
-                    // Если схема равна нужной нам, то выводим названия таблиц схемы каталога
-                    if (schema.equals("flight_storage")) {
-                        while (tables.next()) {
-                            System.out.println(tables.getString("TABLE_NAME"));
-                        }
-                    }
-                }
+        SchemaCatalog catalog = SchemaCatalog.getInstance();
+        for (TableMetadata table : catalog.tables().values()) {
+            System.out.println(table.name() + " " + table.columnNames() + " pk=" + table.primaryKey());
+            for (IndexMetadata index : table.indexes()) {
+                System.out.println("    " + index);
             }
+        }
+    }
+
+    /**
+     * Колонка версии для оптимистической блокировки в {@code TicketDao.update()}. У уже существующих билетов версия
+     * будет 0, новые получают её из {@code DEFAULT}.
+     */
+    private static void addTicketVersionColumn() {
+        String sql = """
+                ALTER TABLE flight_storage.ticket ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0
+                """;
+        try (
+                var connection = ConnectionManager.get();
+                var statement = connection.createStatement();
+        ) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        // схема поменялась - перечитываем её
+        SchemaCatalog.getInstance().refresh();
+    }
+
+    /**
+     * Одно место на перелёт можно продать только один раз. Этот индекс нужен и для
+     * {@code ON CONFLICT (flight_id, seat_no)} в {@code SeatReservationDao}.
+     */
+    private static void addTicketSeatIndex() {
+        String sql = """
+                CREATE UNIQUE INDEX IF NOT EXISTS ticket_flight_id_seat_no_idx
+                ON flight_storage.ticket (flight_id, seat_no)
+                """;
+        try (
+                var connection = ConnectionManager.get();
+                var statement = connection.createStatement();
+        ) {
+            statement.execute(sql);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        // схема поменялась - перечитываем её
+        SchemaCatalog.getInstance().refresh();
     }
 
     private static List<Long> getFlightsBetween(LocalDateTime start, LocalDateTime end) {
@@ -48,8 +48,10 @@ import java.sql.Statement;
  * добавлять в конце наши <i>flight_id</i>:
  * <pre>{@code
  *         var deleteFlightSql = "DELETE FROM flight_storage.flight WHERE id = " + flightId;
- *         var deleteTicketsSql = "DELETE FROM flight_storage.ticket WHERE id = " + flightId;
+ *         var deleteTicketsSql = "DELETE FROM flight_storage.ticket WHERE flight_id = " + flightId;
  * }</pre>
+ * Обратите внимание, что билеты удаляем по {@code flight_id}, а не по {@code id} - иначе удалился бы билет с таким
+ * же id, а билеты перелёта остались бы и не дали удалить сам перелёт.
  * И выполняем их батчем и он выполняет все наши батч-запросы:
  * <pre>{@code int[] ints = statement.executeBatch();}</pre>
  * Результатом выполнения возвращается массив обновлённых значений. Т.е. для каждого выполненного запроса возвращается
@@ -61,13 +63,19 @@ import java.sql.Statement;
  * из этих запросов, потому что посылаем их батчем, т.е. сразу всем скоупом.
  * <br><br>
  * <b>Batch очень хорошая вещь, если необходимо сэкономить время на отправки запрсов на сторону сервера базы данных.</b>
+ * <br><br>
+ * Склеивать SQL из строк можно разве что в учебном примере. В DAO то же самое удаление сделано через параметры и
+ * одним запросом на много перелётов сразу - {@code FlightDao.deleteWithTickets(flightIds)}.
+ * <br><br>
+ * А ручные {@code setAutoCommit(false)}/{@code commit()}/{@code rollback()} заменяет
+ * {@code TransactionManager.inTransaction(() -> ...)}.
  */
 public class TransactionRunner {
     public static void main(String[] args) throws SQLException {
         long flightId = 8;
 
         var deleteFlightSql = "DELETE FROM flight_storage.flight WHERE id = " + flightId;
-        var deleteTicketsSql = "DELETE FROM flight_storage.ticket WHERE id = " + flightId;
+        var deleteTicketsSql = "DELETE FROM flight_storage.ticket WHERE flight_id = " + flightId;
 
         Connection connection = null;
         Statement statement = null;
@@ -0,0 +1,153 @@
+package bulk;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * <h1>Бинарный формат COPY</h1>
+ * Заголовок {@code PGCOPY\n\377\r\n\0}, флаги и длина расширения заголовка, дальше строки: количество колонок
+ * (int16), и для каждой колонки длина (int32, {@code -1} - это {@code NULL}) и сами байты в том виде, в котором
+ * их хранит postgres. В конце {@code -1} вместо количества колонок.
+ * <br><br>
+ * Кодируем только типы, которые есть в flight_storage:
+ * <ul>
+ *     <li>text/varchar/char - байты UTF-8</li>
+ *     <li>int8 и int4 - 8 и 4 байта big-endian</li>
+ *     <li>timestamp - микросекунды от 2000-01-01 00:00:00</li>
+ *     <li>numeric - цифры в системе счисления по основанию 10000</li>
+ * </ul>
+ */
+final class BinaryRowWriter implements CopyRowWriter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final short NUMERIC_POSITIVE = 0x0000;
+    private static final short NUMERIC_NEGATIVE = 0x4000;
+    private static final BigInteger NUMERIC_BASE = BigInteger.valueOf(10_000);
+
+    private final DataOutputStream out;
+
+    BinaryRowWriter(OutputStream outputStream) throws IOException {
+        this.out = new DataOutputStream(outputStream);
+        out.write(SIGNATURE);
+        // флаги
+        out.writeInt(0);
+        // длина расширения заголовка
+        out.writeInt(0);
+    }
+
+    @Override
+    public void startRow(int columns) throws IOException {
+        out.writeShort(columns);
+    }
+
+    @Override
+    public void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public void writeLong(Long value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(Long.BYTES);
+        out.writeLong(value);
+    }
+
+    @Override
+    public void writeInt(Integer value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(Integer.BYTES);
+        out.writeInt(value);
+    }
+
+    @Override
+    public void writeTimestamp(LocalDateTime value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(Long.BYTES);
+        out.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, value));
+    }
+
+    /**
+     * Число раскладываем на группы по 4 десятичных цифры так, чтобы граница групп проходила по десятичной точке.
+     * {@code weight} - степень 10000 у первой группы, {@code dscale} - количество цифр после точки.
+     */
+    @Override
+    public void writeNumeric(BigDecimal value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        short sign = value.signum() < 0 ? NUMERIC_NEGATIVE : NUMERIC_POSITIVE;
+        BigDecimal abs = value.abs();
+        if (abs.scale() < 0) {
+            abs = abs.setScale(0);
+        }
+        int dscale = abs.scale();
+        // Дополняем дробную часть нулями до кратной 4 длины
+        int fractionGroups = (dscale + 3) / 4;
+        BigInteger unscaled = abs.setScale(fractionGroups * 4).unscaledValue();
+
+        // Группы от младшей к старшей
+        short[] groups = new short[unscaled.toString().length() / 4 + 1];
+        int count = 0;
+        while (unscaled.signum() > 0) {
+            BigInteger[] divRem = unscaled.divideAndRemainder(NUMERIC_BASE);
+            groups[count++] = divRem[1].shortValue();
+            unscaled = divRem[0];
+        }
+        int weight = count - fractionGroups - 1;
+        // Нули в младших группах не пишем
+        int lowest = 0;
+        while (lowest < count && groups[lowest] == 0) {
+            lowest++;
+        }
+        int digits = count - lowest;
+        if (digits == 0) {
+            weight = 0;
+        }
+
+        out.writeInt(8 + digits * 2);
+        out.writeShort(digits);
+        out.writeShort(weight);
+        out.writeShort(sign);
+        out.writeShort(dscale);
+        for (int i = count - 1; i >= lowest; i--) {
+            out.writeShort(groups[i]);
+        }
+    }
+
+    @Override
+    public void endRow() {
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.writeShort(-1);
+        out.flush();
+    }
+
+    private void writeNull() throws IOException {
+        out.writeInt(-1);
+    }
+}
@@ -0,0 +1,191 @@
+package bulk;
+
+import entity.Flight;
+import entity.Ticket;
+import exception.DaoException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+import org.postgresql.copy.PGCopyOutputStream;
+import util.ConnectionManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Массовая загрузка и выгрузка через COPY</h1>
+ * Даже batch-запросы для действительно больших объёмов медленные: каждая строка - это отдельный INSERT, который база
+ * должна разобрать и выполнить. {@code COPY} - это отдельный протокол postgres, в котором данные идут сплошным
+ * потоком, а база вставляет их без разбора SQL на каждую строку. Драйвер postgres даёт к нему доступ через
+ * {@link CopyManager}, который получаем из нашего соединения через {@code connection.unwrap(PGConnection.class)}.
+ * <br><br>
+ * Строки никогда не собираются в память целиком: при загрузке сущности берутся из {@link Iterable} по одной и сразу
+ * кодируются в буфер, который уходит в базу по мере заполнения; при выгрузке каждая строка разбирается и сразу
+ * отдаётся в {@link Consumer}.
+ * <br><br>
+ * Id у билетов и перелётов генерирует база, а {@code COPY} их не возвращает, поэтому загруженные сущности остаются
+ * без id. Если id нужны - используйте {@code TicketDao.saveAll()}.
+ */
+public class CopyBulkLoader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String TICKET_COLUMNS = "passenger_no, passenger_name, flight_id, seat_no, cost";
+    private static final String FLIGHT_COLUMNS = """
+            flight_no, departure_date, departure_airport_code, arrival_date, arrival_airport_code, aircraft_id, status\
+            """;
+    private static final String COPY_IN_SQL = "COPY %s (%s) FROM STDIN %s";
+    private static final String EXPORT_TICKETS_SQL = """
+            COPY (
+            SELECT t.id, t.passenger_no, t.passenger_name, t.seat_no, t.cost,
+            f.id, f.flight_no, f.departure_date, f.departure_airport_code,
+            f.arrival_date, f.arrival_airport_code, f.aircraft_id, f.status
+            FROM flight_storage.ticket t
+            JOIN flight_storage.flight f ON t.flight_id = f.id
+            ) TO STDOUT (FORMAT csv)
+            """;
+    private static final String EXPORT_FLIGHTS_SQL = """
+            COPY (
+            SELECT id, flight_no, departure_date, departure_airport_code,
+            arrival_date, arrival_airport_code, aircraft_id, status
+            FROM flight_storage.flight
+            ) TO STDOUT (FORMAT csv)
+            """;
+
+    private static final CopyBulkLoader INSTANCE = new CopyBulkLoader();
+
+    private CopyBulkLoader() {
+    }
+
+    public static CopyBulkLoader getInstance() {
+        return INSTANCE;
+    }
+
+    public CopyResult loadTickets(Iterable<Ticket> tickets, CopyFormat format) {
+        return load("flight_storage.ticket", TICKET_COLUMNS, format, tickets, (writer, ticket) -> {
+            writer.startRow(5);
+            writer.writeText(ticket.getPassengerNo());
+            writer.writeText(ticket.getPassengerName());
+            writer.writeLong(ticket.getFlight().id());
+            writer.writeText(ticket.getSeatNo());
+            writer.writeNumeric(ticket.getCost());
+            writer.endRow();
+        });
+    }
+
+    /**
+     * В бинарном формате типы должны совпадать с таблицей: {@code aircraft_id} - int4, даты - timestamp.
+     */
+    public CopyResult loadFlights(Iterable<Flight> flights, CopyFormat format) {
+        return load("flight_storage.flight", FLIGHT_COLUMNS, format, flights, (writer, flight) -> {
+            writer.startRow(7);
+            writer.writeText(flight.flightNo());
+            writer.writeTimestamp(flight.departureDate());
+            writer.writeText(flight.arrivalDate());
+            writer.writeTimestamp(flight.arrival_date());
+            writer.writeText(flight.arrival_airport_code());
+            writer.writeInt(flight.aircraftId());
+            writer.writeText(flight.status());
+            writer.endRow();
+        });
+    }
+
+    /**
+     * Выгружаем все билеты вместе с их перелётами. Билеты одного перелёта не делят один объект {@code Flight} -
+     * для этого пришлось бы держать в памяти все перелёты.
+     */
+    public CopyResult exportTickets(Consumer<Ticket> consumer) {
+        return export(EXPORT_TICKETS_SQL, fields -> consumer.accept(new Ticket(
+                Long.valueOf(fields.get(0)),
+                fields.get(1),
+                fields.get(2),
+                buildFlight(fields, 5),
+                fields.get(3),
+                new BigDecimal(fields.get(4))
+        )));
+    }
+
+    public CopyResult exportFlights(Consumer<Flight> consumer) {
+        return export(EXPORT_FLIGHTS_SQL, fields -> consumer.accept(buildFlight(fields, 0)));
+    }
+
+    private static Flight buildFlight(List<String> fields, int offset) {
+        return new Flight(
+                Long.valueOf(fields.get(offset)),
+                fields.get(offset + 1),
+                parseTimestamp(fields.get(offset + 2)),
+                fields.get(offset + 3),
+                parseTimestamp(fields.get(offset + 4)),
+                fields.get(offset + 5),
+                Integer.valueOf(fields.get(offset + 6)),
+                fields.get(offset + 7)
+        );
+    }
+
+    private static LocalDateTime parseTimestamp(String value) {
+        return value == null ? null : LocalDateTime.parse(value.replace(' ', 'T'));
+    }
+
+    private <T> CopyResult load(String table, String columns, CopyFormat format, Iterable<T> rows,
+                                RowEncoder<T> encoder) {
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionManager.get()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyIn copyIn = copyManager.copyIn(COPY_IN_SQL.formatted(table, columns, format.options()));
+            try {
+                PGCopyOutputStream outputStream = new PGCopyOutputStream(copyIn, BUFFER_SIZE);
+                CopyRowWriter writer = format == CopyFormat.CSV
+                        ? new CsvRowWriter(outputStream)
+                        : new BinaryRowWriter(outputStream);
+                for (T row : rows) {
+                    encoder.encode(writer, row);
+                }
+                writer.finish();
+
+                long loaded = outputStream.endCopy();
+                return new CopyResult(loaded, System.nanoTime() - start);
+            } finally {
+                // Если упали посередине, то соединение нельзя возвращать в пул в режиме COPY
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException | IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private CopyResult export(String sql, Consumer<List<String>> consumer) {
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionManager.get()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyOut copyOut = copyManager.copyOut(sql);
+            try {
+                long rows = 0;
+                byte[] row;
+                while ((row = copyOut.readFromCopy()) != null) {
+                    consumer.accept(CsvRowParser.parse(new String(row, StandardCharsets.UTF_8)));
+                    rows++;
+                }
+                return new CopyResult(rows, System.nanoTime() - start);
+            } finally {
+                if (copyOut.isActive()) {
+                    copyOut.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowEncoder<T> {
+        void encode(CopyRowWriter writer, T row) throws IOException;
+    }
+}
@@ -0,0 +1,24 @@
+package bulk;
+
+/**
+ * Формат данных для {@code COPY}.
+ * <ul>
+ *     <li>{@code CSV} - текст, проще отлаживать, типы колонок база приводит сама</li>
+ *     <li>{@code BINARY} - бинарный формат postgres, быстрее всего, но типы значений должны в точности совпадать с
+ *     типами колонок таблицы</li>
+ * </ul>
+ */
+public enum CopyFormat {
+    CSV("(FORMAT csv)"),
+    BINARY("(FORMAT binary)");
+
+    private final String options;
+
+    CopyFormat(String options) {
+        this.options = options;
+    }
+
+    String options() {
+        return options;
+    }
+}
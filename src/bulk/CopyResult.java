@@ -0,0 +1,17 @@
+package bulk;
+
+/**
+ * Результат {@code COPY}: сколько строк загружено/выгружено и за какое время.
+ */
+public record CopyResult(long rows, long elapsedNanos) {
+
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return "CopyResult{rows=%d, elapsed=%d ms, %.0f rows/s}"
+                .formatted(rows, elapsedNanos / 1_000_000, rowsPerSecond());
+    }
+}
@@ -0,0 +1,30 @@
+package bulk;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Запись строк в поток {@code COPY ... FROM STDIN}. Сущность записывает свои колонки по порядку, а реализация уже
+ * знает, как их закодировать в нужном {@link CopyFormat}.
+ */
+interface CopyRowWriter {
+    void startRow(int columns) throws IOException;
+
+    void writeText(String value) throws IOException;
+
+    void writeLong(Long value) throws IOException;
+
+    void writeInt(Integer value) throws IOException;
+
+    void writeTimestamp(LocalDateTime value) throws IOException;
+
+    void writeNumeric(BigDecimal value) throws IOException;
+
+    void endRow() throws IOException;
+
+    /**
+     * Дописывает окончание данных и сбрасывает буферы.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,62 @@
+package bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор одной строки {@code COPY ... TO STDOUT (FORMAT csv)}. Postgres отдаёт каждую строку таблицы отдельным
+ * сообщением, поэтому разбираем строку целиком, не думая о переносах строк внутри значений.
+ * <br>
+ * Пустое значение без кавычек - это {@code NULL}, {@code ""} - пустая строка.
+ */
+final class CsvRowParser {
+
+    private CsvRowParser() {
+    }
+
+    static List<String> parse(String row) {
+        List<String> fields = new ArrayList<>();
+        int length = row.length();
+        while (length > 0 && (row.charAt(length - 1) == '\n' || row.charAt(length - 1) == '\r')) {
+            length--;
+        }
+
+        int i = 0;
+        while (true) {
+            if (i < length && row.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < length) {
+                    char c = row.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && row.charAt(i) == '"') {
+                            value.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(c);
+                    }
+                }
+                fields.add(value.toString());
+            } else {
+                int end = row.indexOf(',', i);
+                if (end < 0 || end > length) {
+                    end = length;
+                }
+                fields.add(end == i ? null : row.substring(i, end));
+                i = end;
+            }
+            if (i >= length) {
+                return fields;
+            }
+            // пропускаем запятую
+            i++;
+            if (i == length) {
+                fields.add(null);
+                return fields;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bulk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Строки в формате {@code CSV}. {@code null} пишем пустым значением без кавычек, а пустую строку - как {@code ""},
+ * именно так их различает {@code COPY}.
+ */
+final class CsvRowWriter implements CopyRowWriter {
+
+    private final Writer writer;
+    private boolean firstColumn;
+
+    CsvRowWriter(OutputStream outputStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void startRow(int columns) {
+        firstColumn = true;
+    }
+
+    @Override
+    public void writeText(String value) throws IOException {
+        separator();
+        if (value == null) {
+            return;
+        }
+        if (value.isEmpty() || needsQuotes(value)) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+
+    @Override
+    public void writeLong(Long value) throws IOException {
+        writeRaw(value);
+    }
+
+    @Override
+    public void writeInt(Integer value) throws IOException {
+        writeRaw(value);
+    }
+
+    @Override
+    public void writeTimestamp(LocalDateTime value) throws IOException {
+        writeRaw(value);
+    }
+
+    @Override
+    public void writeNumeric(BigDecimal value) throws IOException {
+        writeRaw(value == null ? null : value.toPlainString());
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        writer.write('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    private void writeRaw(Object value) throws IOException {
+        separator();
+        if (value != null) {
+            writer.write(value.toString());
+        }
+    }
+
+    private void separator() throws IOException {
+        if (!firstColumn) {
+            writer.write(',');
+        }
+        firstColumn = false;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
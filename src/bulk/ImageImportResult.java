@@ -0,0 +1,33 @@
+package bulk;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Результат импорта картинок.
+ *
+ * @param uploaded загружено файлов
+ * @param missing  файлов, для самолётов которых нет строки в {@code aircraft}
+ * @param skipped  файлов, из имени которых не удалось получить id, или вторых файлов на тот же id
+ * @param failed   файлы, на которых упала загрузка
+ * @param bytes    загружено байт
+ */
+public record ImageImportResult(int uploaded, int missing, int skipped, List<Path> failed, long bytes,
+                                long elapsedNanos) {
+
+    public double filesPerSecond() {
+        return elapsedNanos == 0 ? 0 : uploaded / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    public double megabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes / 1024.0 / 1024.0 / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return ("ImageImportResult{uploaded=%d, missing=%d, skipped=%d, failed=%d, elapsed=%d ms, "
+                + "%.1f files/s, %.1f MiB/s}")
+                .formatted(uploaded, missing, skipped, failed.size(), elapsedNanos / 1_000_000, filesPerSecond(),
+                        megabytesPerSecond());
+    }
+}
@@ -0,0 +1,136 @@
+package bulk;
+
+import dao.AircraftImageDao;
+import util.ConnectionManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * <h1>Параллельная загрузка картинок самолётов</h1>
+ * {@code BlobRunner} загружает одну картинку одним соединением. Здесь обходим каталог, id самолёта берём из начала
+ * имени файла ({@code 1.jpg}, {@code 17-Boeing777.png}, {@code 3_side.jpg}) и загружаем файлы параллельно:
+ * <ul>
+ *     <li>потоков столько же, сколько соединений в пуле - больше всё равно ждали бы соединение</li>
+ *     <li>каждый файл уходит через {@link AircraftImageDao#saveImage(Integer, Path)}, т.е. потоком через
+ *     {@code setBinaryStream()}, а не целиком в {@code byte[]}</li>
+ *     <li>суммарный размер файлов "в полёте" ограничен {@link Semaphore} на {@code maxInFlightBytes}: обход каталога
+ *     ждёт, пока загрузятся предыдущие файлы. Файл больше лимита занимает весь лимит и грузится один</li>
+ * </ul>
+ * Ошибка на одном файле не останавливает импорт - файл попадает в {@link ImageImportResult#failed()}.
+ * <pre>{@code
+ * ImageImportResult result = ImageImporter.of(AircraftImageDao.getInstance()).importDirectory(Path.of("images"));
+ * }</pre>
+ */
+public final class ImageImporter {
+    private static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+    private static final Pattern AIRCRAFT_ID = Pattern.compile("^(\\d+)(\\D.*)?$");
+
+    private final AircraftImageDao imageDao;
+    private final int parallelism;
+    private final int maxInFlightBytes;
+
+    public ImageImporter(AircraftImageDao imageDao, int parallelism, int maxInFlightBytes) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (maxInFlightBytes <= 0) {
+            throw new IllegalArgumentException("Max in-flight bytes must be positive: " + maxInFlightBytes);
+        }
+        this.imageDao = imageDao;
+        this.parallelism = parallelism;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public static ImageImporter of(AircraftImageDao imageDao) {
+        return new ImageImporter(imageDao, ConnectionManager.poolSize(), DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * Загружаем все подходящие файлы каталога и его подкаталогов. Файлы обходятся в порядке имён, поэтому если на
+     * один id нашлось несколько файлов, то загружается первый по имени, а остальные пропускаются.
+     */
+    public ImageImportResult importDirectory(Path directory) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlightBytes);
+        AtomicInteger uploaded = new AtomicInteger();
+        AtomicInteger missing = new AtomicInteger();
+        LongAdder bytes = new LongAdder();
+        List<Path> failed = Collections.synchronizedList(new ArrayList<>());
+        Set<Integer> seen = new HashSet<>();
+        int skipped = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        long start = System.nanoTime();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                Integer aircraftId = aircraftId(file);
+                if (aircraftId == null || !seen.add(aircraftId)) {
+                    skipped++;
+                    continue;
+                }
+                long size = Files.size(file);
+                int permits = (int) Math.min(size, maxInFlightBytes);
+                inFlight.acquire(permits);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            if (imageDao.saveImage(aircraftId, file)) {
+                                uploaded.incrementAndGet();
+                                bytes.add(size);
+                            } else {
+                                missing.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            // не только DaoException: например, ConnectionPoolException по таймауту ожидания
+                            // соединения, иначе файл не попал бы ни в один счётчик
+                            failed.add(file);
+                        } finally {
+                            inFlight.release(permits);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release(permits);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return new ImageImportResult(uploaded.get(), missing.get(), skipped, List.copyOf(failed), bytes.sum(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * @return id самолёта из начала имени файла или null, если имя начинается не с цифр
+     */
+    static Integer aircraftId(Path file) {
+        Matcher matcher = AIRCRAFT_ID.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
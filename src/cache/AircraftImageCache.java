@@ -0,0 +1,338 @@
+package cache;
+
+import dao.AircraftImageDao;
+import dto.ImageFingerprint;
+import util.PropertiesUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Картинки самолётов на локальном диске</h1>
+ * Каждый запрос картинки - это {@code SELECT image} и вся картинка по сети. Картинки меняются редко, поэтому
+ * храним их копии в локальном каталоге:
+ * <ul>
+ *     <li>имя файла - {@code <id самолёта>-<md5 содержимого>.img}, т.е. файл однозначно определяет содержимое, и
+ *     другая версия картинки - это другой файл</li>
+ *     <li>перед выдачей спрашиваем у базы только длину и md5 картинки. md5 хранится в колонке {@code image_md5}
+ *     (без неё база считает {@code md5()} по всей картинке на каждом запросе). Если файл с таким md5 есть и его длина
+ *     совпадает - отдаём его, иначе скачиваем картинку заново, а старые версии удаляем</li>
+ *     <li>файл отдаём через {@link FileChannel#transferTo(long, long, WritableByteChannel)}: если получатель -
+ *     сокет или файл, то ядро копирует данные само, без буферов в куче</li>
+ *     <li>общий размер каталога ограничен {@code maxBytes}, при переполнении удаляем давно не запрашиваемые файлы</li>
+ * </ul>
+ * Настройки:
+ * <pre>{@code
+ * aircraft.image.cache.dir=/tmp/aircraft-images    // по умолчанию java.io.tmpdir/aircraft-images
+ * aircraft.image.cache.size=268435456             // байт
+ * }</pre>
+ * Картинка скачивается во временный файл и переименовывается атомарно, поэтому недокачанный файл никогда не будет
+ * выдан. Если картинку поменяли, пока мы её скачивали, то файл получит имя по md5 того, что реально скачалось.
+ */
+public final class AircraftImageCache {
+    private static final String DIRECTORY_KEY = "aircraft.image.cache.dir";
+    private static final String MAX_SIZE_KEY = "aircraft.image.cache.size";
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+    private static final String SUFFIX = ".img";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final AircraftImageDao imageDao;
+    private final Path directory;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Path, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+
+    /**
+     * Файлы, оставшиеся в каталоге с прошлого запуска, подхватываем - самые старые по времени изменения будут
+     * вытеснены первыми.
+     */
+    public AircraftImageCache(AircraftImageDao imageDao, Path directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.imageDao = imageDao;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static AircraftImageCache getInstance() {
+        return Default.INSTANCE;
+    }
+
+    /**
+     * Актуальная картинка самолёта на локальном диске. Файл может быть удалён при вытеснении, поэтому его нужно
+     * открыть сразу, а не хранить путь.
+     *
+     * @return пустой, если самолёта или картинки у него нет
+     */
+    public Optional<Path> get(Integer aircraftId) {
+        Optional<ImageFingerprint> fingerprint = imageDao.findImageFingerprint(aircraftId);
+        if (fingerprint.isEmpty()) {
+            removeAll(aircraftId);
+            return Optional.empty();
+        }
+        Path path = directory.resolve(fileName(aircraftId, fingerprint.get().md5()));
+        if (isCached(path, fingerprint.get().length())) {
+            hits.increment();
+            return Optional.of(path);
+        }
+        misses.increment();
+        if (removeAll(aircraftId) > 0) {
+            stale.increment();
+        }
+        return download(aircraftId);
+    }
+
+    /**
+     * Отдаём картинку в {@code target} через {@code transferTo()}. Если файл вытеснили между проверкой и
+     * открытием, то берём его ещё раз.
+     *
+     * @return false, если самолёта или картинки у него нет
+     */
+    public boolean transferTo(Integer aircraftId, WritableByteChannel target) {
+        for (int attempt = 0; ; attempt++) {
+            Optional<Path> path = get(aircraftId);
+            if (path.isEmpty()) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(path.get(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+                return true;
+            } catch (NoSuchFileException e) {
+                if (attempt > 0) {
+                    throw new UncheckedIOException(e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public ImageCacheStats stats() {
+        int size;
+        long bytes;
+        lock.lock();
+        try {
+            size = files.size();
+            bytes = totalBytes;
+        } finally {
+            lock.unlock();
+        }
+        return new ImageCacheStats(hits.sum(), misses.sum(), evictions.sum(), stale.sum(), size, bytes);
+    }
+
+    /**
+     * @return сколько байт сейчас занимают файлы кеша
+     */
+    public long sizeInBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isCached(Path path, long length) {
+        lock.lock();
+        try {
+            Long size = files.get(path);
+            if (size == null) {
+                return false;
+            }
+            if (size == length && Files.exists(path)) {
+                return true;
+            }
+            // файл удалили снаружи или он не той длины - скачаем заново
+            remove(path);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Path> download(Integer aircraftId) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, aircraftId + "-", TEMP_SUFFIX);
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            boolean found;
+            try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(temp), md5)) {
+                found = imageDao.readImage(aircraftId, outputStream);
+            }
+            if (!found) {
+                Files.delete(temp);
+                return Optional.empty();
+            }
+            Path path = directory.resolve(fileName(aircraftId, HexFormat.of().formatHex(md5.digest())));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            add(path, Files.size(path));
+            return Optional.of(path);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            deleteQuietly(temp);
+            throw new IllegalStateException(e);
+        } catch (RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Добавляем файл и вытесняем самые давно запрошенные, пока не уложимся в {@code maxBytes}. Только что
+     * добавленный файл не трогаем, даже если он один больше всего кеша.
+     */
+    private void add(Path path, long size) {
+        lock.lock();
+        try {
+            Long previous = files.put(path, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<Path, Long>> iterator = files.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<Path, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(path)) {
+                    continue;
+                }
+                iterator.remove();
+                totalBytes -= eldest.getValue();
+                deleteQuietly(eldest.getKey());
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляем все версии картинки самолёта.
+     *
+     * @return сколько файлов удалено
+     */
+    private int removeAll(Integer aircraftId) {
+        String prefix = aircraftId + "-";
+        lock.lock();
+        try {
+            List<Path> versions = new ArrayList<>();
+            for (Path path : files.keySet()) {
+                if (path.getFileName().toString().startsWith(prefix)) {
+                    versions.add(path);
+                }
+            }
+            versions.forEach(this::remove);
+            return versions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Path path) {
+        Long size = files.remove(path);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteQuietly(path);
+    }
+
+    private void load() throws IOException {
+        List<Path> cached = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(path);
+                } else if (name.endsWith(SUFFIX)) {
+                    cached.add(path);
+                }
+            }
+        }
+        cached.sort(Comparator.comparing(AircraftImageCache::lastModified));
+        for (Path path : cached) {
+            add(path, Files.size(path));
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String fileName(Integer aircraftId, String md5) {
+        return aircraftId + "-" + md5 + SUFFIX;
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // файл удалим при следующем вытеснении или запуске
+        }
+    }
+
+    private static final class Default {
+        private static final AircraftImageCache INSTANCE = new AircraftImageCache(
+                AircraftImageDao.getInstance(),
+                directory(),
+                maxSize()
+        );
+
+        private static Path directory() {
+            String directory = PropertiesUtil.get(DIRECTORY_KEY);
+            return directory != null
+                    ? Path.of(directory.trim())
+                    : Path.of(System.getProperty("java.io.tmpdir"), "aircraft-images");
+        }
+
+        private static long maxSize() {
+            String size = PropertiesUtil.get(MAX_SIZE_KEY);
+            return size == null ? DEFAULT_MAX_SIZE : Long.parseLong(size.trim());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cache;
+
+/**
+ * Снимок метрик кеша.
+ *
+ * @param hits        сколько раз значение нашлось в кеше
+ * @param misses      сколько раз значения в кеше не было (или оно устарело)
+ * @param evictions   сколько значений вытеснено из-за ограничения размера
+ * @param expirations сколько значений выброшено из-за истёкшего срока жизни
+ * @param size        сколько значений сейчас в кеше
+ */
+public record CacheStats(long hits, long misses, long evictions, long expirations, int size) {
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,18 @@
+package cache;
+
+/**
+ * Снимок метрик {@link AircraftImageCache}.
+ *
+ * @param hits              сколько раз актуальная картинка нашлась на диске
+ * @param misses            сколько раз картинку пришлось скачать
+ * @param evictions         сколько файлов удалено из-за ограничения размера
+ * @param staleReplacements сколько раз на диске лежала старая версия картинки и её заменили новой
+ * @param files             сколько файлов сейчас в кеше
+ * @param bytes             сколько байт они занимают
+ */
+public record ImageCacheStats(long hits, long misses, long evictions, long staleReplacements, int files, long bytes) {
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,140 @@
+package cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Ограниченный кеш в памяти</h1>
+ * {@link LinkedHashMap} с {@code accessOrder = true} сам держит элементы в порядке последнего обращения, поэтому
+ * когда кеш переполнен, выбрасываем самый давно использованный (LRU). Кроме размера ограничено и время жизни
+ * значения ({@code ttl}): устаревшее значение считается отсутствующим. {@code ttl} равный нулю - без ограничения.
+ * <br><br>
+ * {@code get()} тоже меняет порядок элементов внутри {@link LinkedHashMap}, поэтому все операции под одной
+ * блокировкой. Метрики считаются в {@link LongAdder}, чтобы не добавлять работы под блокировкой.
+ */
+public final class LruCache<K, V> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public LruCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, LruCache.Entry<V>> eldest) {
+                if (size() <= LruCache.this.maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return значение или {@code null}, если его нет в кеше или оно устарело
+     */
+    public V get(K key) {
+        Entry<V> entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && isExpired(entry, System.nanoTime())) {
+                entries.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, ttlNanos == 0 ? 0 : System.nanoTime() + ttlNanos);
+        lock.lock();
+        try {
+            entries.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Выбрасываем все устаревшие значения, не дожидаясь обращения к ним.
+     */
+    public void cleanUp() {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (isExpired(iterator.next(), now)) {
+                    iterator.remove();
+                    expirations.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CacheStats stats() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size);
+    }
+
+    /**
+     * {@code System.nanoTime()} может быть и отрицательным, поэтому "без срока жизни" проверяем по {@code ttlNanos},
+     * а не через {@code expiresAt = Long.MAX_VALUE}: разность с ним переполнится.
+     */
+    private boolean isExpired(Entry<?> entry, long now) {
+        return ttlNanos != 0 && now - entry.expiresAt > 0;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
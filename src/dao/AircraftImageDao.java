@@ -0,0 +1,396 @@
+package dao;
+
+import dto.ImageFingerprint;
+import exception.DaoException;
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+import util.ConnectionManager;
+import util.SchemaCatalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * <h1>Картинки самолётов без копирования в память</h1>
+ * В {@code BlobRunner} картинка целиком читается в {@code byte[]} ({@code Files.readAllBytes()}) и так же целиком
+ * отдаётся драйверу ({@code setBytes()}), а при чтении - {@code getBytes()} и {@code Files.write()}. Для большой
+ * картинки это два полных её экземпляра в куче. Здесь два способа хранения:
+ * <ul>
+ *     <li>колонка {@code image BYTEA} - пишем через {@code setBinaryStream()} с известной длиной (драйвер
+ *     отправляет поток в сокет порциями), читаем через {@code getBinaryStream()} и копируем в {@link OutputStream}
+ *     буфером фиксированного размера. Драйвер postgres всё равно держит значение bytea из строки результата в
+ *     памяти, но это одна копия, а не две, и без промежуточного {@code byte[]} у нас</li>
+ *     <li>колонка {@code image_oid OID} - <i>Large Object</i>: содержимое лежит в {@code pg_largeobject} кусками, и
+ *     читать/писать его можно по частям. Память - только наш буфер, независимо от размера картинки. Работать с
+ *     large object можно только внутри транзакции</li>
+ * </ul>
+ * Колонки добавляются в {@code BlobRunner.alterColumnToAircraft()} и {@code BlobRunner.addImageOidColumn()}. Если
+ * нужной колонки нет, то падаем сразу с понятной ошибкой - наличие колонки проверяется по {@link SchemaCatalog}, т.е.
+ * в памяти, без запроса в базу.
+ * <h2>md5 картинки</h2>
+ * Необязательная колонка {@code image_md5} ({@code BlobRunner.addImageMd5Column()}) хранит md5 картинки из
+ * {@code image}. {@link #saveImage(Integer, Path)} считает его, пока отправляет файл, и записывает в той же
+ * транзакции, поэтому {@link #findImageFingerprint(Integer)} не нужно читать всю картинку ради {@code md5()}. Кто
+ * пишет {@code image} в обход этого DAO, должен обнулить {@code image_md5} - тогда md5 посчитает база.
+ */
+public class AircraftImageDao {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TABLE = "aircraft";
+    private static final String IMAGE_COLUMN = "image";
+    private static final String IMAGE_OID_COLUMN = "image_oid";
+    private static final String IMAGE_MD5_COLUMN = "image_md5";
+
+    private static final String UPDATE_IMAGE_SQL = """
+            UPDATE flight_storage.aircraft SET image = ? WHERE id = ?
+            """;
+    private static final String FIND_IMAGE_SQL = """
+            SELECT image FROM flight_storage.aircraft WHERE id = ?
+            """;
+    private static final String UPDATE_IMAGE_MD5_SQL = """
+            UPDATE flight_storage.aircraft SET image_md5 = ? WHERE id = ?
+            """;
+    /**
+     * md5 считается на сервере: по сети приходит 40 байт, а не вся картинка. Но сервер при этом читает картинку
+     * целиком, поэтому этот запрос - только для базы без колонки {@code image_md5}.
+     */
+    private static final String FIND_IMAGE_FINGERPRINT_SQL = """
+            SELECT octet_length(image) AS length, md5(image) AS md5
+            FROM flight_storage.aircraft
+            WHERE id = ? AND image IS NOT NULL
+            """;
+    /**
+     * {@code octet_length()} для bytea берёт длину из заголовка значения и картинку не читает, md5 - из колонки.
+     * {@code md5(image)} считается, только если {@code image_md5} не заполнен.
+     */
+    private static final String FIND_STORED_IMAGE_FINGERPRINT_SQL = """
+            SELECT octet_length(image) AS length, COALESCE(image_md5, md5(image)) AS md5
+            FROM flight_storage.aircraft
+            WHERE id = ? AND image IS NOT NULL
+            """;
+    private static final String LOCK_IMAGE_OID_SQL = """
+            SELECT image_oid FROM flight_storage.aircraft WHERE id = ? FOR UPDATE
+            """;
+    private static final String UPDATE_IMAGE_OID_SQL = """
+            UPDATE flight_storage.aircraft SET image_oid = ? WHERE id = ?
+            """;
+    private static final String FIND_IMAGE_OID_SQL = """
+            SELECT image_oid FROM flight_storage.aircraft WHERE id = ?
+            """;
+
+    private final SchemaCatalog schemaCatalog = SchemaCatalog.getInstance();
+
+    /**
+     * Сохраняем картинку из файла в колонку {@code image}. Файл не читается в память - драйвер берёт его из потока.
+     * Если есть колонка {@code image_md5}, то md5 считаем по тем же байтам, которые ушли в базу, и записываем в той
+     * же транзакции.
+     *
+     * @return false, если самолёта с таким id нет
+     */
+    public boolean saveImage(Integer aircraftId, Path file) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_COLUMN);
+        boolean storeMd5 = schemaCatalog.hasColumn(TABLE, IMAGE_MD5_COLUMN);
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean saved = saveImage(connection, aircraftId, file, storeMd5);
+                connection.commit();
+                return saved;
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private boolean saveImage(Connection connection, Integer aircraftId, Path file, boolean storeMd5)
+            throws SQLException, IOException {
+        MessageDigest md5 = md5();
+        try (
+                PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_IMAGE_SQL);
+                InputStream image = new DigestInputStream(Files.newInputStream(file), md5);
+        ) {
+            preparedStatement.setBinaryStream(1, image, Files.size(file));
+            preparedStatement.setInt(2, aircraftId);
+            if (preparedStatement.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        if (storeMd5) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_IMAGE_MD5_SQL)) {
+                preparedStatement.setString(1, HexFormat.of().formatHex(md5.digest()));
+                preparedStatement.setInt(2, aircraftId);
+                preparedStatement.executeUpdate();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Копируем картинку из колонки {@code image} в {@code target}. Поток {@code target} не закрываем - его открывал
+     * вызывающий.
+     *
+     * @return false, если самолёта или картинки у него нет
+     */
+    public boolean readImage(Integer aircraftId, OutputStream target) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_COLUMN);
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(FIND_IMAGE_SQL);
+        ) {
+            preparedStatement.setInt(1, aircraftId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            try (InputStream image = resultSet.getBinaryStream("image")) {
+                if (image == null) {
+                    return false;
+                }
+                copy(image, target);
+                return true;
+            }
+        } catch (SQLException | IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    public boolean readImage(Integer aircraftId, Path target) {
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            return readImage(aircraftId, outputStream);
+        } catch (IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Длина и md5 картинки из колонки {@code image} без передачи самой картинки. С колонкой {@code image_md5} база
+     * не читает и саму картинку.
+     *
+     * @return пустой, если самолёта или картинки у него нет
+     */
+    public Optional<ImageFingerprint> findImageFingerprint(Integer aircraftId) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_COLUMN);
+        String sql = schemaCatalog.hasColumn(TABLE, IMAGE_MD5_COLUMN)
+                ? FIND_STORED_IMAGE_FINGERPRINT_SQL
+                : FIND_IMAGE_FINGERPRINT_SQL;
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        ) {
+            preparedStatement.setInt(1, aircraftId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (!resultSet.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(new ImageFingerprint(resultSet.getLong("length"), resultSet.getString("md5")));
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * <h1>Сохраняем картинку как Large Object</h1>
+     * Читаем файл через {@link FileChannel} в буфер фиксированного размера и дописываем буфер в large object. Строку
+     * самолёта блокируем ({@code FOR UPDATE}), чтобы два одновременных сохранения не потеряли ссылку на чей-то
+     * large object, а старый large object удаляем - сам он при обновлении колонки не удалится.
+     *
+     * @return false, если самолёта с таким id нет
+     */
+    public boolean saveLargeImage(Integer aircraftId, Path file) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_OID_COLUMN);
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean saved = saveLargeImage(connection, aircraftId, file);
+                connection.commit();
+                return saved;
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private boolean saveLargeImage(Connection connection, Integer aircraftId, Path file)
+            throws SQLException, IOException {
+        Long oldOid;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(LOCK_IMAGE_OID_SQL)) {
+            preparedStatement.setInt(1, aircraftId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            oldOid = resultSet.getObject("image_oid", Long.class);
+        }
+
+        LargeObjectManager largeObjects = connection.unwrap(PGConnection.class).getLargeObjectAPI();
+        long oid = largeObjects.createLO(LargeObjectManager.READWRITE);
+        try (
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                LargeObject largeObject = largeObjects.open(oid, LargeObjectManager.WRITE);
+        ) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                largeObject.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_IMAGE_OID_SQL)) {
+            preparedStatement.setLong(1, oid);
+            preparedStatement.setInt(2, aircraftId);
+            preparedStatement.executeUpdate();
+        }
+        if (oldOid != null) {
+            largeObjects.unlink(oldOid);
+        }
+        return true;
+    }
+
+    /**
+     * Копируем Large Object картинки в {@code target} кусками по {@code BUFFER_SIZE}. Поток {@code target} не
+     * закрываем.
+     *
+     * @return false, если самолёта или картинки у него нет
+     */
+    public boolean readLargeImage(Integer aircraftId, OutputStream target) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_OID_COLUMN);
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean found = readLargeImage(connection, aircraftId, target);
+                connection.commit();
+                return found;
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    public boolean readLargeImage(Integer aircraftId, Path target) {
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            return readLargeImage(aircraftId, outputStream);
+        } catch (IOException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private boolean readLargeImage(Connection connection, Integer aircraftId, OutputStream target)
+            throws SQLException, IOException {
+        long oid;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(FIND_IMAGE_OID_SQL)) {
+            preparedStatement.setInt(1, aircraftId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            oid = resultSet.getLong("image_oid");
+            if (resultSet.wasNull()) {
+                return false;
+            }
+        }
+
+        LargeObjectManager largeObjects = connection.unwrap(PGConnection.class).getLargeObjectAPI();
+        try (LargeObject largeObject = largeObjects.open(oid, LargeObjectManager.READ)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = largeObject.read(buffer, 0, buffer.length)) > 0) {
+                target.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Убираем картинку-Large Object у самолёта и удаляем сам large object.
+     *
+     * @return false, если самолёта или картинки у него нет
+     */
+    public boolean deleteLargeImage(Integer aircraftId) {
+        schemaCatalog.requireColumn(TABLE, IMAGE_OID_COLUMN);
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean deleted = deleteLargeImage(connection, aircraftId);
+                connection.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private boolean deleteLargeImage(Connection connection, Integer aircraftId) throws SQLException {
+        Long oid;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(LOCK_IMAGE_OID_SQL)) {
+            preparedStatement.setInt(1, aircraftId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            oid = resultSet.getObject("image_oid", Long.class);
+        }
+        if (oid == null) {
+            return false;
+        }
+        try (PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_IMAGE_OID_SQL)) {
+            preparedStatement.setNull(1, Types.BIGINT);
+            preparedStatement.setInt(2, aircraftId);
+            preparedStatement.executeUpdate();
+        }
+        connection.unwrap(PGConnection.class).getLargeObjectAPI().unlink(oid);
+        return true;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copy(InputStream source, OutputStream target) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            target.write(buffer, 0, read);
+        }
+    }
+
+    private static final AircraftImageDao INSTANCE = new AircraftImageDao();
+
+    private AircraftImageDao() {
+    }
+
+    public static AircraftImageDao getInstance() {
+        return INSTANCE;
+    }
+}
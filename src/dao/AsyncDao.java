@@ -0,0 +1,47 @@
+package dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Асинхронный вариант {@link Dao}: те же операции, но вместо результата сразу возвращается
+ * {@link CompletableFuture}. Позволяет, например, запросить сразу много билетов по id и дождаться всех вместе:
+ * <pre>{@code
+ * AsyncDao<Long, Ticket> ticketDao = AsyncDao.of(TicketDao.getInstance());
+ * List<CompletableFuture<Optional<Ticket>>> futures = ids.stream().map(ticketDao::findById).toList();
+ * CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+ * }</pre>
+ */
+public interface AsyncDao<K, E> {
+    CompletableFuture<Boolean> delete(K key);
+
+    CompletableFuture<E> save(E entity);
+
+    CompletableFuture<Void> update(E entity);
+
+    /**
+     * См. {@link Dao#upsert(Object)}.
+     */
+    CompletableFuture<E> upsert(E entity);
+
+    /**
+     * См. {@link Dao#upsertAll(Collection)}.
+     */
+    CompletableFuture<List<E>> upsertAll(Collection<E> entities);
+
+    CompletableFuture<List<E>> findAll();
+
+    CompletableFuture<Optional<E>> findById(K key);
+
+    /**
+     * См. {@link Dao#findAllByIds(Collection)}.
+     */
+    CompletableFuture<Map<K, E>> findAllByIds(Collection<K> keys);
+
+    static <K, E> AsyncDao<K, E> of(Dao<K, E> dao) {
+        return new ExecutorAsyncDao<>(dao);
+    }
+}
@@ -0,0 +1,142 @@
+package dao;
+
+import util.ConnectionManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Склейка одновременных findById в один запрос</h1>
+ * Когда много потоков одновременно запрашивают сущности по id, каждый {@code findById()} - это отдельное соединение
+ * из пула и отдельный запрос. Здесь запросы, пришедшие в течение короткого окна ({@code window}), собираются в одну
+ * пачку и выполняются одним {@link Dao#findAllByIds(java.util.Collection)}. Одинаковые id в одной пачке
+ * запрашиваются один раз. Если пачка набрала {@code maxBatchSize} id, она уходит сразу, не дожидаясь окна.
+ * <pre>{@code
+ * BatchLoader<Long, Ticket> loader = BatchLoader.of(TicketDao.getInstance());
+ * // в разных потоках
+ * Optional<Ticket> ticket = loader.findById(id);
+ * }</pre>
+ * Используется {@link ReentrantLock}, а не {@code synchronized}, чтобы ожидание блокировки не прикрепляло
+ * виртуальный поток к потоку-носителю.
+ */
+public final class BatchLoader<K, E> {
+    private static final Duration DEFAULT_WINDOW = Duration.ofMillis(2);
+    private static final int DEFAULT_MAX_BATCH_SIZE = DaoSupport.IDS_CHUNK_SIZE;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "batch-loader-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Пачки выполняются в потоках этого пула: каждой пачке нужно одно соединение, поэтому потоков столько же, сколько
+     * соединений в пуле.
+     */
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            ConnectionManager.poolSize(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "batch-loader-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final Dao<K, E> dao;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<K, CompletableFuture<Optional<E>>> pending = new HashMap<>();
+
+    public BatchLoader(Dao<K, E> dao, Duration window, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+        }
+        this.dao = dao;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public static <K, E> BatchLoader<K, E> of(Dao<K, E> dao) {
+        return new BatchLoader<>(dao, DEFAULT_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public CompletableFuture<Optional<E>> load(K key) {
+        Map<K, CompletableFuture<Optional<E>>> batch = null;
+        CompletableFuture<Optional<E>> future;
+        lock.lock();
+        try {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() == 1) {
+                // Первый id в пачке - запускаем таймер окна
+                Map<K, CompletableFuture<Optional<E>>> scheduled = pending;
+                SCHEDULER.schedule(() -> dispatch(scheduled), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            if (pending.size() >= maxBatchSize) {
+                batch = pending;
+                pending = new HashMap<>();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            Map<K, CompletableFuture<Optional<E>>> full = batch;
+            EXECUTOR.execute(() -> execute(full));
+        }
+        return future;
+    }
+
+    /**
+     * Блокирующий вариант {@link #load(Object)} - выглядит как обычный {@code findById()}.
+     */
+    public Optional<E> findById(K key) {
+        try {
+            return load(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Таймер окна сработал. Если эту пачку уже отправили из-за размера, то ничего не делаем.
+     */
+    private void dispatch(Map<K, CompletableFuture<Optional<E>>> scheduled) {
+        lock.lock();
+        try {
+            if (pending != scheduled) {
+                return;
+            }
+            pending = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+        EXECUTOR.execute(() -> execute(scheduled));
+    }
+
+    private void execute(Map<K, CompletableFuture<Optional<E>>> batch) {
+        try {
+            Map<K, E> found = dao.findAllByIds(batch.keySet());
+            batch.forEach((key, future) -> future.complete(Optional.ofNullable(found.get(key))));
+        } catch (RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 // K - ключ, E - сущность
@@ -11,7 +13,29 @@ public interface Dao<K, E> {
 
     void update(E entity);
 
+    /**
+     * Вставка или обновление одним запросом ({@code INSERT ... ON CONFLICT (id) DO UPDATE}) - не нужно сначала
+     * делать {@code findById()}, чтобы решить, вызывать {@code save()} или {@code update()}. Сущность без id просто
+     * сохраняется.
+     *
+     * @return сохранённая сущность (у сущности без id появится id)
+     */
+    E upsert(E entity);
+
+    /**
+     * То же, что {@link #upsert(Object)}, но пачками в одной транзакции.
+     *
+     * @return сохранённые сущности в том же порядке
+     */
+    List<E> upsertAll(Collection<E> entities);
+
     List<E> findAll();
 
     Optional<E> findById(K key);
+
+    /**
+     * Поиск сразу по многим ключам одним запросом. В результате есть все запрошенные ключи в том же порядке, для
+     * ненайденных значение {@code null}.
+     */
+    Map<K, E> findAllByIds(Collection<K> keys);
 }
@@ -0,0 +1,92 @@
+package dao;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Общий код для DAO, который не зависит от конкретной сущности.
+ */
+final class DaoSupport {
+    /**
+     * Сколько id передаём в одном массиве {@code = ANY(?)}. Ограничения на размер массива нет, но огромный массив -
+     * это огромный запрос и огромный результат за один раз.
+     */
+    static final int IDS_CHUNK_SIZE = 1000;
+
+    private DaoSupport() {
+    }
+
+    /**
+     * Выполняем {@code sql} с условием {@code id = ANY(?)} частями по {@link #IDS_CHUNK_SIZE} id.
+     *
+     * @return все запрошенные id в исходном порядке (без повторов), для ненайденных значение {@code null}
+     */
+    static <E> Map<Long, E> findAllByIds(Connection connection, String sql, Collection<Long> ids,
+                                         RowMapper<E> mapper, Function<E, Long> idOf) throws SQLException {
+        Map<Long, E> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            result.put(Objects.requireNonNull(id, "id"), null);
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+        Long[] keys = result.keySet().toArray(Long[]::new);
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            for (int from = 0; from < keys.length; from += IDS_CHUNK_SIZE) {
+                Long[] chunk = Arrays.copyOfRange(keys, from, Math.min(from + IDS_CHUNK_SIZE, keys.length));
+                Array array = connection.createArrayOf("bigint", chunk);
+                preparedStatement.setArray(1, array);
+
+                ResultSet resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    E entity = mapper.map(resultSet);
+                    result.put(idOf.apply(entity), entity);
+                }
+                array.free();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Выполняем изменяющий {@code sql} с условием {@code id = ANY(?)} частями по {@link #IDS_CHUNK_SIZE} id - один
+     * поход в базу на каждую часть.
+     *
+     * @return сколько строк затронуто всего
+     */
+    static int executeUpdateByIds(Connection connection, String sql, Collection<Long> ids) throws SQLException {
+        return executeUpdateByIds(connection, sql, ids, 1);
+    }
+
+    /**
+     * То же самое, но один и тот же массив id подставляется во все {@code parameterCount} параметров запроса -
+     * например, если в одном запросе удаляем строки из нескольких таблиц.
+     */
+    static int executeUpdateByIds(Connection connection, String sql, Collection<Long> ids, int parameterCount)
+            throws SQLException {
+        Long[] keys = ids.stream().map(id -> Objects.requireNonNull(id, "id")).distinct().toArray(Long[]::new);
+        int updated = 0;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            for (int from = 0; from < keys.length; from += IDS_CHUNK_SIZE) {
+                Long[] chunk = Arrays.copyOfRange(keys, from, Math.min(from + IDS_CHUNK_SIZE, keys.length));
+                Array array = connection.createArrayOf("bigint", chunk);
+                for (int index = 1; index <= parameterCount; index++) {
+                    preparedStatement.setArray(index, array);
+                }
+                updated += preparedStatement.executeUpdate();
+                array.free();
+            }
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,92 @@
+package dao;
+
+import util.ConnectionManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <h1>AsyncDao на пуле потоков</h1>
+ * Каждый вызов выполняется обычным блокирующим {@link Dao} в потоке из общего пула.
+ * <br><br>
+ * Запустить можно сколько угодно задач, но соединений в пуле всего {@code db.pool.size}. Если тысяча задач разом
+ * пойдёт в {@code ConnectionManager.get()}, то большая часть упадёт по таймауту ожидания соединения. Поэтому потоков
+ * ровно столько, сколько соединений в пуле: одновременно в базу ходят не больше задач, чем есть соединений, а
+ * остальные ждут в очереди пула потоков и не занимают ни поток, ни соединение.
+ * <br><br>
+ * Пул потоков общий для всех асинхронных DAO, потому что и пул соединений у них общий.
+ * <br><br>
+ * Виртуальные потоки ({@code Executors.newVirtualThreadPerTaskExecutor()}) здесь подошли бы лучше, но на JDK 19,
+ * под который настроен проект, это preview API.
+ */
+final class ExecutorAsyncDao<K, E> implements AsyncDao<K, E> {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            ConnectionManager.poolSize(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "async-dao-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final Dao<K, E> dao;
+
+    ExecutorAsyncDao(Dao<K, E> dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(K key) {
+        return supply(() -> dao.delete(key));
+    }
+
+    @Override
+    public CompletableFuture<E> save(E entity) {
+        return supply(() -> dao.save(entity));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(E entity) {
+        return supply(() -> {
+            dao.update(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<E> upsert(E entity) {
+        return supply(() -> dao.upsert(entity));
+    }
+
+    @Override
+    public CompletableFuture<List<E>> upsertAll(Collection<E> entities) {
+        return supply(() -> dao.upsertAll(entities));
+    }
+
+    @Override
+    public CompletableFuture<List<E>> findAll() {
+        return supply(dao::findAll);
+    }
+
+    @Override
+    public CompletableFuture<Optional<E>> findById(K key) {
+        return supply(() -> dao.findById(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, E>> findAllByIds(Collection<K> keys) {
+        return supply(() -> dao.findAllByIds(keys));
+    }
+
+    private static <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, EXECUTOR);
+    }
+}
@@ -1,22 +1,100 @@
 package dao;
 
+import cache.CacheStats;
+import cache.LruCache;
 import entity.Flight;
 import exception.DaoException;
 import util.ConnectionManager;
+import util.TransactionManager;
+import util.PropertiesUtil;
 
-import javax.xml.transform.Result;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <b>Обычно для DAO создают интерфейс, где есть все CRUD операции и просто в каждом из DAO его реализуют</b>
+ * <h2>Кеш перелётов</h2>
+ * Перелётов намного меньше, чем билетов, и меняются они редко, а читаются постоянно - при каждой сборке билета.
+ * Поэтому перед базой стоит {@link LruCache}: {@code findById()} и {@code findAllByIds()} сначала смотрят в кеш и
+ * идут в базу только за тем, чего там нет. Размер кеша и время жизни значения (в миллисекундах):
+ * <pre>{@code
+ * flight.cache.size=10000
+ * flight.cache.ttl=600000
+ * }</pre>
+ * {@code Flight} - record, то есть неизменяемый, поэтому один и тот же объект из кеша можно спокойно отдавать всем
+ * потокам. Изменения через этот DAO ({@code update}, {@code delete} и их пакетные варианты) выбрасывают перелёт
+ * из кеша, а сохранённый перелёт кладётся в кеш.
+ * <br><br>
+ * В кеш попадают только закоммиченные данные. Перелёт, прочитанный на соединении с выключенным autoCommit (внутри
+ * транзакции), в кеш не кладётся: после отката он остался бы там до конца TTL. Записанный внутри транзакции
+ * {@code TransactionManager} перелёт кладётся в кеш только после её commit.
  */
 public class FlightDao implements Dao<Long, Flight> {
-    private static String FIND_BY_ID_SQL = """
+    private static final String CACHE_SIZE_KEY = "flight.cache.size";
+    private static final String CACHE_TTL_KEY = "flight.cache.ttl";
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final long DEFAULT_CACHE_TTL = 600_000;
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    private static final String DELETE_SQL = """
+            DELETE FROM flight_storage.flight WHERE id = ?
+            """;
+    private static final String DELETE_ALL_SQL = """
+            DELETE FROM flight_storage.flight WHERE id = ANY(?)
+            """;
+    /**
+     * Оба DELETE выполняются одним запросом. Проверка внешнего ключа ticket -> flight (по умолчанию
+     * {@code NO ACTION}) делается в конце запроса, когда билеты из {@code deleted_tickets} уже удалены.
+     */
+    private static final String DELETE_WITH_TICKETS_SQL = """
+            WITH deleted_tickets AS (
+                DELETE FROM flight_storage.ticket WHERE flight_id = ANY(?)
+            )
+            DELETE FROM flight_storage.flight WHERE id = ANY(?)
+            """;
+    private static final String SAVE_SQL = """
+            INSERT INTO flight_storage.flight (flight_no, departure_date, departure_airport_code, arrival_date,
+                                               arrival_airport_code, aircraft_id, status)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String UPSERT_SQL = """
+            INSERT INTO flight_storage.flight (id, flight_no, departure_date, departure_airport_code, arrival_date,
+                                               arrival_airport_code, aircraft_id, status)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (id) DO UPDATE
+            SET flight_no = EXCLUDED.flight_no,
+                departure_date = EXCLUDED.departure_date,
+                departure_airport_code = EXCLUDED.departure_airport_code,
+                arrival_date = EXCLUDED.arrival_date,
+                arrival_airport_code = EXCLUDED.arrival_airport_code,
+                aircraft_id = EXCLUDED.aircraft_id,
+                status = EXCLUDED.status
+            """;
+    private static final String UPDATE_SQL = """
+            UPDATE flight_storage.flight
+            SET flight_no = ?, departure_date = ?, departure_airport_code = ?, arrival_date = ?,
+                arrival_airport_code = ?, aircraft_id = ?, status = ?
+            WHERE id = ?
+            """;
+    private static final String FIND_ALL_SQL = """
             SELECT 
             id,
             status, 
@@ -26,27 +104,404 @@ public class FlightDao implements Dao<Long, Flight> {
             departure_airport_code, 
             flight_no,
             departure_date
-            FROM flight_storage.flight WHERE id = ?
+            FROM flight_storage.flight
+            """;
+    private static final String FIND_BY_ID_SQL = FIND_ALL_SQL + """
+             WHERE id = ?
+            """;
+    private static final String FIND_ALL_BY_IDS_SQL = FIND_ALL_SQL + """
+             WHERE id = ANY(?)
             """;
 
     @Override
     public boolean delete(Long key) {
-        return false;
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(DELETE_SQL);
+        ) {
+            preparedStatement.setLong(1, key);
+            return preparedStatement.executeUpdate() > 0;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        } finally {
+            invalidateAfterCommit(key);
+        }
     }
 
+    /**
+     * {@code Flight} - record, поэтому id в переданный объект записать нельзя: возвращаем новый перелёт с id.
+     */
     @Override
-    public Flight save(Flight entity) {
-        return null;
+    public Flight save(Flight flight) {
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        SAVE_SQL,
+                        Statement.RETURN_GENERATED_KEYS
+                );
+        ) {
+            setFlightParameters(preparedStatement, flight, 1);
+
+            preparedStatement.executeUpdate();
+
+            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+            generatedKeys.next();
+            Flight saved = withId(flight, generatedKeys.getLong("id"));
+            putAfterCommit(saved);
+            return saved;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    @Override
+    public void update(Flight flight) {
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_SQL);
+        ) {
+            setFlightParameters(preparedStatement, flight, 1);
+            preparedStatement.setLong(8, flight.id());
+
+            preparedStatement.executeUpdate();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        } finally {
+            invalidateAfterCommit(flight.id());
+        }
+    }
+
+    /**
+     * Один запрос {@code INSERT ... ON CONFLICT (id) DO UPDATE} вместо {@code findById()} и затем {@code save()} или
+     * {@code update()}. Перелёт без id просто сохраняется. Перелёт целиком приходит от вызывающего, поэтому после
+     * запроса он же и кладётся в кеш.
+     */
+    @Override
+    public Flight upsert(Flight flight) {
+        if (flight.id() == null) {
+            return save(flight);
+        }
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(UPSERT_SQL);
+        ) {
+            preparedStatement.setLong(1, flight.id());
+            setFlightParameters(preparedStatement, flight, 2);
+
+            preparedStatement.executeUpdate();
+        } catch (SQLException throwables) {
+            cache.invalidate(flight.id());
+            throw new DaoException(throwables);
+        }
+        putAfterCommit(flight);
+        return flight;
     }
 
+    /**
+     * Перелёты без id сохраняются как в {@code saveAll()}, остальные - через {@code UPSERT_SQL}, всё пачками по
+     * {@code DEFAULT_BATCH_SIZE} в одной транзакции.
+     *
+     * @return перелёты в том же порядке, у перелётов без id появится id
+     */
     @Override
-    public void update(Flight entity) {
+    public List<Flight> upsertAll(Collection<Flight> flights) {
+        List<Flight> toUpsert = List.copyOf(flights);
+        if (toUpsert.isEmpty()) {
+            return toUpsert;
+        }
+        List<Flight> inserts = toUpsert.stream().filter(flight -> flight.id() == null).toList();
+        List<Flight> upserts = toUpsert.stream().filter(flight -> flight.id() != null).toList();
+        List<Flight> saved = new ArrayList<>(inserts.size());
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try (
+                    PreparedStatement saveStatement = connection.prepareStatement(
+                            SAVE_SQL,
+                            Statement.RETURN_GENERATED_KEYS
+                    );
+                    PreparedStatement upsertStatement = connection.prepareStatement(UPSERT_SQL);
+            ) {
+                for (int from = 0; from < inserts.size(); from += DEFAULT_BATCH_SIZE) {
+                    List<Flight> chunk = inserts.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, inserts.size()));
+                    for (Flight flight : chunk) {
+                        setFlightParameters(saveStatement, flight, 1);
+                        saveStatement.addBatch();
+                    }
+                    saveStatement.executeBatch();
 
+                    ResultSet generatedKeys = saveStatement.getGeneratedKeys();
+                    for (Flight flight : chunk) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Expected " + chunk.size() + " generated keys");
+                        }
+                        saved.add(withId(flight, generatedKeys.getLong("id")));
+                    }
+                }
+                for (int from = 0; from < upserts.size(); from += DEFAULT_BATCH_SIZE) {
+                    for (Flight flight : upserts.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, upserts.size()))) {
+                        upsertStatement.setLong(1, flight.id());
+                        setFlightParameters(upsertStatement, flight, 2);
+                        upsertStatement.addBatch();
+                    }
+                    upsertStatement.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                upserts.forEach(flight -> cache.invalidate(flight.id()));
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+
+        List<Flight> result = new ArrayList<>(toUpsert.size());
+        Iterator<Flight> savedIterator = saved.iterator();
+        for (Flight flight : toUpsert) {
+            Flight upserted = flight.id() == null ? savedIterator.next() : flight;
+            putAfterCommit(upserted);
+            result.add(upserted);
+        }
+        return result;
     }
 
+    /**
+     * Результат небольшой, поэтому читаем его целиком. Для больших выборок - {@link #stream()}. В кеш перелёты из
+     * полного чтения не кладём, иначе одна выборка вытеснит из кеша всё, что действительно часто читают.
+     */
     @Override
     public List<Flight> findAll() {
-        return null;
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(FIND_ALL_SQL);
+        ) {
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            List<Flight> flights = new ArrayList<>();
+            FlightRowMapper mapper = new FlightRowMapper();
+            while (resultSet.next()) {
+                flights.add(mapper.map(resultSet));
+            }
+            return flights;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    /**
+     * <h1>Потоковое чтение перелётов</h1>
+     * Так же, как {@code TicketDao.stream()}: autoCommit выключен и задан {@code setFetchSize()}, поэтому драйвер
+     * читает строки порциями через курсор, а соединение держится, пока не закроют stream. Stream
+     * <b>обязательно</b> закрывать:
+     * <pre>{@code
+     * try (Stream<Flight> flights = flightDao.stream()) {
+     *     flights.forEach(...);
+     * }
+     * }</pre>
+     */
+    public Stream<Flight> stream() {
+        Connection connection = ConnectionManager.get();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = connection.prepareStatement(FIND_ALL_SQL);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            FlightRowMapper mapper = new FlightRowMapper();
+
+            Spliterator<Flight> spliterator = new Spliterators.AbstractSpliterator<>(
+                    Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL
+            ) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Flight> action) {
+                    try {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                        action.accept(mapper.map(resultSet));
+                        return true;
+                    } catch (SQLException throwables) {
+                        throw new DaoException(throwables);
+                    }
+                }
+            };
+            return StreamSupport.stream(spliterator, false)
+                    .onClose(() -> close(connection));
+        } catch (SQLException throwables) {
+            close(connection);
+            throw new DaoException(throwables);
+        } catch (RuntimeException e) {
+            close(connection);
+            throw e;
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    public List<Flight> saveAll(Collection<Flight> flights) {
+        return saveAll(flights, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * <h1>Сохранение множества перелётов</h1>
+     * Как {@code TicketDao.saveAll()}: одна транзакция, в базу уходят пачки по {@code batchSize} через
+     * {@code addBatch()}/{@code executeBatch()}. Если хоть одна пачка упала, то откатываются все.
+     *
+     * @return новые перелёты с id в том же порядке, в котором их передали
+     */
+    public List<Flight> saveAll(Collection<Flight> flights, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<Flight> toSave = List.copyOf(flights);
+        List<Flight> saved = new ArrayList<>(toSave.size());
+        if (toSave.isEmpty()) {
+            return saved;
+        }
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(
+                    SAVE_SQL,
+                    Statement.RETURN_GENERATED_KEYS
+            )) {
+                for (int from = 0; from < toSave.size(); from += batchSize) {
+                    List<Flight> chunk = toSave.subList(from, Math.min(from + batchSize, toSave.size()));
+                    for (Flight flight : chunk) {
+                        setFlightParameters(preparedStatement, flight, 1);
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+
+                    ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+                    for (Flight flight : chunk) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Expected " + chunk.size() + " generated keys");
+                        }
+                        saved.add(withId(flight, generatedKeys.getLong("id")));
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+        saved.forEach(this::putAfterCommit);
+        return saved;
+    }
+
+    public void updateAll(Collection<Flight> flights) {
+        updateAll(flights, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Обновляем перелёты пачками по {@code batchSize} в одной транзакции. Обновлённые перелёты выбрасываем из кеша,
+     * даже если транзакция откатилась, - лишний промах дешевле устаревших данных.
+     */
+    public void updateAll(Collection<Flight> flights, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<Flight> toUpdate = List.copyOf(flights);
+        if (toUpdate.isEmpty()) {
+            return;
+        }
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_SQL)) {
+                for (int from = 0; from < toUpdate.size(); from += batchSize) {
+                    for (Flight flight : toUpdate.subList(from, Math.min(from + batchSize, toUpdate.size()))) {
+                        setFlightParameters(preparedStatement, flight, 1);
+                        preparedStatement.setLong(8, flight.id());
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        } finally {
+            toUpdate.forEach(flight -> invalidateAfterCommit(flight.id()));
+        }
+    }
+
+    /**
+     * Удаляем перелёты запросом {@code WHERE id = ANY(?)} - один поход в базу на каждые
+     * {@code DaoSupport.IDS_CHUNK_SIZE} id, всё в одной транзакции.
+     *
+     * @return сколько перелётов удалено
+     */
+    public int deleteAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                int deleted = DaoSupport.executeUpdateByIds(connection, DELETE_ALL_SQL, ids);
+                connection.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        } finally {
+            ids.forEach(this::invalidateAfterCommit);
+        }
+    }
+
+    /**
+     * <h1>Удаление перелётов вместе с их билетами</h1>
+     * В {@code TransactionRunner} это два запроса, склеенных из строк и отправленных через
+     * {@code Statement.addBatch()}. Здесь:
+     * <ul>
+     *     <li>id передаются параметром-массивом, а не конкатенацией строк, поэтому SQL-инъекция невозможна, а
+     *     текст запроса всегда один и тот же (его можно подготовить один раз)</li>
+     *     <li>билеты и перелёты удаляются одним запросом через data-modifying CTE
+     *     ({@code WITH ... DELETE ... DELETE}), т.е. один поход в базу на каждые {@code DaoSupport.IDS_CHUNK_SIZE}
+     *     перелётов, а не два запроса на каждый перелёт</li>
+     *     <li>все части выполняются в одной транзакции: либо удалится всё, либо ничего</li>
+     * </ul>
+     *
+     * @param flightIds id перелётов, которые удаляем вместе с билетами
+     * @return сколько перелётов удалено
+     */
+    public int deleteWithTickets(Collection<Long> flightIds) {
+        if (flightIds.isEmpty()) {
+            return 0;
+        }
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            try {
+                int deleted = DaoSupport.executeUpdateByIds(connection, DELETE_WITH_TICKETS_SQL, flightIds, 2);
+                connection.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        } finally {
+            flightIds.forEach(this::invalidateAfterCommit);
+        }
     }
 
     /**
@@ -62,6 +517,13 @@ public class FlightDao implements Dao<Long, Flight> {
      * <pre>{@code public Optional<Flight> findById(Long key, Connection connection)}</pre>
      * Выходит, если нам нужен ещё один connection, то мы его не открываем, а просто выполняем с помощью существующего,
      * а главное, мы его не закрываем.
+     * <br><br>
+     * Вариант с thread local сделан в {@code util.TransactionManager}: внутри {@code inTransaction()} обычный
+     * {@code findById(key)} и так получает соединение текущей транзакции.
+     * <br><br>
+     * Этот вариант всегда идёт в базу (соединение могли передать как раз для того, чтобы прочитать свежие данные
+     * внутри транзакции). Кеш найденный перелёт обновляет, только если соединение в режиме autoCommit: внутри
+     * транзакции можно прочитать ещё не закоммиченные данные.
      * @param key
      * @param connection
      * @return
@@ -76,16 +538,10 @@ public class FlightDao implements Dao<Long, Flight> {
 
             Flight flight = null;
             if (resultSet.next()) {
-                flight = new Flight(
-                        resultSet.getLong("id"),
-                        resultSet.getString("flight_no"),
-                        resultSet.getTimestamp("departure_date").toLocalDateTime(),
-                        resultSet.getString("departure_airport_code"),
-                        resultSet.getTimestamp("arrival_date").toLocalDateTime(),
-                        resultSet.getString("arrival_airport_code"),
-                        resultSet.getInt("aircraft_id"),
-                        resultSet.getString("status")
-                );
+                flight = new FlightRowMapper().map(resultSet);
+                if (connection.getAutoCommit()) {
+                    cache.put(key, flight);
+                }
             }
 
             return Optional.ofNullable(flight);
@@ -95,8 +551,19 @@ public class FlightDao implements Dao<Long, Flight> {
 
     }
 
+    /**
+     * Сначала смотрим в кеш, и только если перелёта там нет - берём соединение и идём в базу.
+     * <br><br>
+     * Внутри транзакции {@code TransactionManager} кеш не смотрим: транзакция могла сама изменить перелёт, а
+     * параллельный читатель вне транзакции - успеть положить в кеш его закоммиченную, т.е. старую для этой
+     * транзакции, версию.
+     */
     @Override
     public Optional<Flight> findById(Long key) {
+        Flight cached = TransactionManager.isActive() ? null : cache.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
         try (
                 Connection connection = ConnectionManager.get();
         ) {
@@ -106,11 +573,137 @@ public class FlightDao implements Dao<Long, Flight> {
         }
     }
 
+    /**
+     * <h1>Поиск перелётов по многим id одним запросом</h1>
+     * Вместо {@code findById()} на каждый id передаём все id одним параметром-массивом:
+     * <pre>{@code WHERE id = ANY(?)}</pre>
+     * Очень большие списки режем на части по {@code DaoSupport.IDS_CHUNK_SIZE}, но все части выполняются на одном
+     * соединении. В базу уходят только те id, которых нет в кеше; если все нашлись в кеше, соединение не берём вовсе.
+     * Внутри транзакции, как и в {@link #findById(Long)}, кеш не смотрим.
+     */
+    @Override
+    public Map<Long, Flight> findAllByIds(Collection<Long> ids) {
+        Map<Long, Flight> result = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+        boolean useCache = !TransactionManager.isActive();
+        for (Long id : ids) {
+            if (result.containsKey(id)) {
+                continue;
+            }
+            Flight cached = useCache ? cache.get(id) : null;
+            result.put(id, cached);
+            if (cached == null) {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        try (Connection connection = ConnectionManager.get()) {
+            Map<Long, Flight> found = DaoSupport.findAllByIds(
+                    connection, FIND_ALL_BY_IDS_SQL, misses, new FlightRowMapper(), Flight::id);
+            boolean committed = connection.getAutoCommit();
+            found.forEach((id, flight) -> {
+                if (flight != null) {
+                    if (committed) {
+                        cache.put(id, flight);
+                    }
+                    result.put(id, flight);
+                }
+            });
+            return result;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    /**
+     * Кладём в кеш перелёт, который собрали в другом DAO. Вызывающий сам отвечает за то, что перелёт прочитан вне
+     * транзакции, т.е. это закоммиченные данные.
+     */
+    void cache(Flight flight) {
+        cache.put(flight.id(), flight);
+    }
+
+    /**
+     * Внутри транзакции {@link TransactionManager} перелёт сейчас только выбрасываем из кеша, а кладём после commit -
+     * при откате в кеше не должно остаться того, чего нет в базе. Вне транзакции запрос уже закоммичен, и перелёт
+     * кладётся сразу.
+     */
+    private void putAfterCommit(Flight flight) {
+        cache.invalidate(flight.id());
+        TransactionManager.afterCommit(() -> cache.put(flight.id(), flight));
+    }
+
+    /**
+     * Выбрасываем сразу и ещё раз после commit: пока транзакция не закоммичена, другой поток мог прочитать старую
+     * версию перелёта и положить её в кеш.
+     */
+    private void invalidateAfterCommit(Long id) {
+        cache.invalidate(id);
+        TransactionManager.afterCommit(() -> cache.invalidate(id));
+    }
+
+    /**
+     * Выбрасываем перелёт из кеша, например, если его изменили в обход DAO.
+     */
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return попадания, промахи и вытеснения кеша перелётов
+     */
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Проставляем 7 колонок перелёта начиная с параметра {@code firstIndex}.
+     */
+    private void setFlightParameters(PreparedStatement preparedStatement, Flight flight, int firstIndex)
+            throws SQLException {
+        preparedStatement.setString(firstIndex, flight.flightNo());
+        preparedStatement.setTimestamp(firstIndex + 1, Timestamp.valueOf(flight.departureDate()));
+        preparedStatement.setString(firstIndex + 2, flight.arrivalDate());
+        preparedStatement.setTimestamp(firstIndex + 3, Timestamp.valueOf(flight.arrival_date()));
+        preparedStatement.setString(firstIndex + 4, flight.arrival_airport_code());
+        preparedStatement.setInt(firstIndex + 5, flight.aircraftId());
+        preparedStatement.setString(firstIndex + 6, flight.status());
+    }
+
+    private static Flight withId(Flight flight, Long id) {
+        return new Flight(
+                id,
+                flight.flightNo(),
+                flight.departureDate(),
+                flight.arrivalDate(),
+                flight.arrival_date(),
+                flight.arrival_airport_code(),
+                flight.aircraftId(),
+                flight.status()
+        );
+    }
+
     private static final FlightDao INSTANCE = new FlightDao();
 
+    private final LruCache<Long, Flight> cache = new LruCache<>(
+            (int) getLong(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE),
+            Duration.ofMillis(getLong(CACHE_TTL_KEY, DEFAULT_CACHE_TTL))
+    );
+
     private FlightDao() {
     }
 
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertiesUtil.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
     public static FlightDao getInstance() {
         return INSTANCE;
     }
@@ -0,0 +1,62 @@
+package dao;
+
+import entity.Flight;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Перелёт из строки по номерам колонок. Колонка id передаётся отдельно: в запросах {@code FlightDao} это
+ * {@code id}, а в запросах {@code TicketDao}, где перелёт приходит через JOIN, - {@code flight_id}.
+ */
+public final class FlightRowMapper implements RowMapper<Flight> {
+    private final String idLabel;
+
+    private boolean resolved;
+    private int id;
+    private int flightNo;
+    private int departureDate;
+    private int departureAirportCode;
+    private int arrivalDate;
+    private int arrivalAirportCode;
+    private int aircraftId;
+    private int status;
+
+    public FlightRowMapper() {
+        this("id");
+    }
+
+    public FlightRowMapper(String idLabel) {
+        this.idLabel = idLabel;
+    }
+
+    @Override
+    public Flight map(ResultSet resultSet) throws SQLException {
+        if (!resolved) {
+            resolve(resultSet.getMetaData());
+        }
+        return new Flight(
+                resultSet.getLong(id),
+                resultSet.getString(flightNo),
+                resultSet.getTimestamp(departureDate).toLocalDateTime(),
+                resultSet.getString(departureAirportCode),
+                resultSet.getTimestamp(arrivalDate).toLocalDateTime(),
+                resultSet.getString(arrivalAirportCode),
+                resultSet.getInt(aircraftId),
+                resultSet.getString(status)
+        );
+    }
+
+    private void resolve(ResultSetMetaData metaData) throws SQLException {
+        id = RowMapper.columnIndex(metaData, idLabel);
+        flightNo = RowMapper.columnIndex(metaData, "flight_no");
+        departureDate = RowMapper.columnIndex(metaData, "departure_date");
+        departureAirportCode = RowMapper.columnIndex(metaData, "departure_airport_code");
+        arrivalDate = RowMapper.columnIndex(metaData, "arrival_date");
+        arrivalAirportCode = RowMapper.columnIndex(metaData, "arrival_airport_code");
+        aircraftId = RowMapper.columnIndex(metaData, "aircraft_id");
+        status = RowMapper.columnIndex(metaData, "status");
+        resolved = true;
+    }
+}
@@ -0,0 +1,73 @@
+package dao;
+
+import util.RetryPolicy;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <h1>DAO с повтором при конфликтах</h1>
+ * Обёртка над любым {@link Dao}: каждая операция выполняется через {@link RetryPolicy}, поэтому
+ * {@code 40001}/{@code 40P01} от базы приводят к повтору с паузой, а не сразу к {@code DaoException}:
+ * <pre>{@code
+ * Dao<Long, Ticket> ticketDao = RetryingDao.of(TicketDao.getInstance());
+ * ticketDao.update(ticket);
+ * }</pre>
+ * Повторять можно и {@code save()}: отменённый базой запрос откатывается целиком, дубликата не будет. Внутри
+ * транзакции {@code TransactionManager} операции не повторяются - повторяется вся транзакция.
+ */
+public final class RetryingDao<K, E> implements Dao<K, E> {
+    private final Dao<K, E> dao;
+    private final RetryPolicy retryPolicy;
+
+    public RetryingDao(Dao<K, E> dao, RetryPolicy retryPolicy) {
+        this.dao = dao;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public static <K, E> RetryingDao<K, E> of(Dao<K, E> dao) {
+        return new RetryingDao<>(dao, RetryPolicy.defaultPolicy());
+    }
+
+    @Override
+    public boolean delete(K key) {
+        return retryPolicy.execute(() -> dao.delete(key));
+    }
+
+    @Override
+    public E save(E entity) {
+        return retryPolicy.execute(() -> dao.save(entity));
+    }
+
+    @Override
+    public void update(E entity) {
+        retryPolicy.run(() -> dao.update(entity));
+    }
+
+    @Override
+    public E upsert(E entity) {
+        return retryPolicy.execute(() -> dao.upsert(entity));
+    }
+
+    @Override
+    public List<E> upsertAll(Collection<E> entities) {
+        return retryPolicy.execute(() -> dao.upsertAll(entities));
+    }
+
+    @Override
+    public List<E> findAll() {
+        return retryPolicy.execute(dao::findAll);
+    }
+
+    @Override
+    public Optional<E> findById(K key) {
+        return retryPolicy.execute(() -> dao.findById(key));
+    }
+
+    @Override
+    public Map<K, E> findAllByIds(Collection<K> keys) {
+        return retryPolicy.execute(() -> dao.findAllByIds(keys));
+    }
+}
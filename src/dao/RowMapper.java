@@ -0,0 +1,39 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * <h1>Сборка сущности из строки ResultSet</h1>
+ * {@code resultSet.getString("flight_no")} на каждую колонку каждой строки заставляет драйвер каждый раз искать
+ * колонку по имени без учёта регистра. Номера колонок в пределах одного запроса не меняются, поэтому мапперы
+ * ({@link FlightRowMapper}, {@link TicketRowMapper}) находят номера один раз - по {@link ResultSetMetaData} на
+ * первой строке, а дальше читают колонки по номеру: {@code resultSet.getString(2)}. Номера из
+ * {@code util.SchemaCatalog} здесь не подходят: это порядок колонок в таблице, а номер в результате зависит от списка
+ * колонок и JOIN-ов конкретного запроса.
+ * <br><br>
+ * Маппер запоминает номера колонок первого запроса, поэтому один экземпляр маппера - на один запрос (или на
+ * несколько выполнений одного и того же SQL) и на один поток.
+ */
+@FunctionalInterface
+public interface RowMapper<E> {
+
+    E map(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Номер колонки (с 1) по её имени или псевдониму без учёта регистра. Если колонок с таким именем несколько, то
+     * берём первую - так же делает {@code resultSet.findColumn()}.
+     *
+     * @throws SQLException если такой колонки в результате нет
+     */
+    static int columnIndex(ResultSetMetaData metaData, String columnLabel) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        for (int index = 1; index <= columnCount; index++) {
+            if (metaData.getColumnLabel(index).equalsIgnoreCase(columnLabel)) {
+                return index;
+            }
+        }
+        throw new SQLException("The column name " + columnLabel + " was not found in this ResultSet.");
+    }
+}
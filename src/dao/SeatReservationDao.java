@@ -0,0 +1,199 @@
+package dao;
+
+import dto.Passenger;
+import entity.Flight;
+import entity.Ticket;
+import exception.DaoException;
+import util.ConnectionManager;
+import util.SchemaCatalog;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * <h1>Бронирование мест</h1>
+ * Раньше места продавались так: найти свободные места, потом {@code TicketDao.save()} на каждое. Между этими двумя
+ * шагами другой покупатель успевает увидеть те же свободные места, и одно место продаётся дважды (или, если на
+ * {@code (flight_id, seat_no)} есть уникальный индекс, второй покупатель просто получает ошибку).
+ * <br><br>
+ * Здесь места захватываются одним запросом:
+ * <ol>
+ *     <li>{@code SELECT ... FOR UPDATE OF s SKIP LOCKED} - выбираем свободные места самолёта и блокируем их строки в
+ *     {@code flight_storage.seat}. Места, которые прямо сейчас захватывает другой покупатель, не ждём, а
+ *     пропускаем ({@code SKIP LOCKED}), поэтому покупатели не стоят в очереди друг за другом, а берут разные места</li>
+ *     <li>{@code INSERT ... ON CONFLICT (flight_id, seat_no) DO NOTHING} - создаём билеты. Если место успели продать
+ *     между снимком данных и блокировкой (другая транзакция закоммитилась и отпустила строку), то билет просто не
+ *     вставится, а не упадёт весь запрос</li>
+ * </ol>
+ * Пассажиры, которым место не досталось, пробуют ещё раз в той же транзакции. Бронирование "всё или ничего": если
+ * свободных мест меньше, чем пассажиров, то откатываемся к точке сохранения и возвращаем пустой список. Точка
+ * сохранения, а не rollback, - чтобы внутри {@code TransactionManager} не откатить чужие изменения внешней
+ * транзакции.
+ * <br><br>
+ * Строки {@code seat} общие для всех перелётов одного самолёта, поэтому одновременные покупки на разные перелёты
+ * этого самолёта тоже пропускают места друг друга. Блокировка держится только до конца транзакции бронирования,
+ * так что это короткий перекос, а не потерянные места - пассажир просто получит следующее свободное.
+ * <br><br>
+ * {@code ON CONFLICT (flight_id, seat_no)} требует уникального индекса (см. {@code JdbcRunner.addTicketSeatIndex()}),
+ * без него {@code reserve()} сразу бросает {@link DaoException}.
+ */
+public class SeatReservationDao {
+    //language=POSTGRES-PSQL
+    private static final String RESERVE_SQL = """
+            WITH free AS (
+                SELECT s.seat_no
+                FROM flight_storage.flight f
+                JOIN flight_storage.seat s ON s.aircraft_id = f.aircraft_id
+                WHERE f.id = ?
+                  AND NOT EXISTS (
+                      SELECT 1 FROM flight_storage.ticket t WHERE t.flight_id = f.id AND t.seat_no = s.seat_no
+                  )
+                ORDER BY s.seat_no
+                LIMIT ?
+                FOR UPDATE OF s SKIP LOCKED
+            ),
+            numbered AS (
+                SELECT seat_no, row_number() OVER (ORDER BY seat_no) AS n FROM free
+            ),
+            passengers AS (
+                SELECT * FROM unnest(?::varchar[], ?::varchar[]) WITH ORDINALITY AS p(passenger_no, passenger_name, n)
+            )
+            INSERT INTO flight_storage.ticket (passenger_no, passenger_name, flight_id, seat_no, cost)
+            SELECT p.passenger_no, p.passenger_name, ?, s.seat_no, ?
+            FROM numbered s
+            JOIN passengers p ON p.n = s.n
+            ON CONFLICT (flight_id, seat_no) DO NOTHING
+            RETURNING id, passenger_no, passenger_name, seat_no, %s
+            """;
+
+    private final FlightDao flightDao = FlightDao.getInstance();
+    private volatile String reserveSql;
+
+    /**
+     * <h1>Бронируем места на перелёт</h1>
+     *
+     * @param flightId   перелёт
+     * @param passengers по одному месту на каждого пассажира
+     * @param cost       цена каждого билета
+     * @return созданные билеты, по одному на пассажира, или пустой список, если свободных мест не хватило
+     */
+    public List<Ticket> reserve(Long flightId, List<Passenger> passengers, BigDecimal cost) {
+        if (passengers.isEmpty()) {
+            return List.of();
+        }
+        // без индекса ON CONFLICT упадёт с непонятной ошибкой, см. JdbcRunner.addTicketSeatIndex()
+        SchemaCatalog.getInstance().requireUniqueIndex("ticket", "flight_id", "seat_no");
+        Flight flight = flightDao.findById(flightId).orElse(null);
+        if (flight == null) {
+            return List.of();
+        }
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                List<Ticket> tickets = claim(connection, flight, passengers, cost);
+                if (tickets.size() < passengers.size()) {
+                    connection.rollback(savepoint);
+                    connection.commit();
+                    return List.of();
+                }
+                connection.releaseSavepoint(savepoint);
+                connection.commit();
+                return tickets;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    /**
+     * Повторяем, пока места достаются хотя бы кому-то из оставшихся пассажиров.
+     */
+    private List<Ticket> claim(Connection connection, Flight flight, List<Passenger> passengers, BigDecimal cost)
+            throws SQLException {
+        List<Ticket> tickets = new ArrayList<>(passengers.size());
+        List<Passenger> remaining = new LinkedList<>(passengers);
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(reserveSql())) {
+            while (!remaining.isEmpty()) {
+                List<Ticket> claimed = claimOnce(connection, preparedStatement, flight, remaining, cost);
+                if (claimed.isEmpty()) {
+                    break;
+                }
+                for (Ticket ticket : claimed) {
+                    remaining.remove(new Passenger(ticket.getPassengerNo(), ticket.getPassengerName()));
+                }
+                tickets.addAll(claimed);
+            }
+        }
+        return tickets;
+    }
+
+    private List<Ticket> claimOnce(Connection connection, PreparedStatement preparedStatement, Flight flight,
+                                   List<Passenger> passengers, BigDecimal cost) throws SQLException {
+        Array passengerNumbers = connection.createArrayOf(
+                "varchar", passengers.stream().map(Passenger::passengerNo).toArray());
+        Array passengerNames = connection.createArrayOf(
+                "varchar", passengers.stream().map(Passenger::passengerName).toArray());
+
+        preparedStatement.setLong(1, flight.id());
+        preparedStatement.setInt(2, passengers.size());
+        preparedStatement.setArray(3, passengerNumbers);
+        preparedStatement.setArray(4, passengerNames);
+        preparedStatement.setLong(5, flight.id());
+        preparedStatement.setBigDecimal(6, cost);
+
+        List<Ticket> tickets = new ArrayList<>();
+        ResultSet resultSet = preparedStatement.executeQuery();
+        while (resultSet.next()) {
+            Ticket ticket = new Ticket(
+                    resultSet.getLong("id"),
+                    resultSet.getString("passenger_no"),
+                    resultSet.getString("passenger_name"),
+                    flight,
+                    resultSet.getString("seat_no"),
+                    cost,
+                    resultSet.getObject("version", Long.class)
+            );
+            ticket.clearDirty();
+            tickets.add(ticket);
+        }
+        passengerNumbers.free();
+        passengerNames.free();
+        return tickets;
+    }
+
+    /**
+     * Колонка версии необязательна (см. {@code TicketDao}), без неё билеты возвращаются с версией {@code null}.
+     */
+    private String reserveSql() {
+        String sql = reserveSql;
+        if (sql == null) {
+            boolean versioned = SchemaCatalog.getInstance().hasColumn("ticket", "version");
+            sql = RESERVE_SQL.formatted(versioned ? "version" : "NULL::bigint AS version");
+            reserveSql = sql;
+        }
+        return sql;
+    }
+
+    private static final SeatReservationDao INSTANCE = new SeatReservationDao();
+
+    private SeatReservationDao() {
+    }
+
+    public static SeatReservationDao getInstance() {
+        return INSTANCE;
+    }
+}
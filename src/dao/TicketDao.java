@@ -1,19 +1,35 @@
 package dao;
 
+import dto.Page;
 import dto.TicketFilter;
-import entity.Flight;
 import entity.Ticket;
 import exception.DaoException;
+import exception.OptimisticLockException;
 import util.ConnectionManager;
+import util.SchemaCatalog;
+import util.TransactionManager;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
-import static java.util.stream.Collectors.joining;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TicketDao implements Dao<Long, Ticket> {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    /**
+     * У PostgreSQL не больше 32767 параметров в одном запросе, на один билет - 5 параметров.
+     */
+    private static final int MAX_MULTI_ROW_VALUES = Short.MAX_VALUE / 5;
     private static final String DELETE_SQL = """
             DELETE FROM flight_storage.ticket WHERE id = ?
             """;
@@ -21,15 +37,29 @@ public class TicketDao implements Dao<Long, Ticket> {
             INSERT INTO flight_storage.ticket (passenger_no, passenger_name, flight_id, seat_no, cost)
             VALUES (?, ?, ?, ?, ?);
             """;
-    public static final String UPDATE_SQL = """
-            UPDATE flight_storage.ticket 
-            SET passenger_no = ?, passenger_name = ?, flight_id = ?, seat_no = ?, cost = ?
-            WHERE id = ?
+    /**
+     * Строки возвращает драйвер ({@code RETURN_GENERATED_KEYS} дописывает {@code RETURNING *}), поэтому запрос
+     * можно выполнять и через {@code executeBatch()}.
+     */
+    private static final String UPSERT_SQL = """
+            INSERT INTO flight_storage.ticket AS t (id, passenger_no, passenger_name, flight_id, seat_no, cost)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (id) DO UPDATE
+            SET passenger_no = EXCLUDED.passenger_no,
+                passenger_name = EXCLUDED.passenger_name,
+                flight_id = EXCLUDED.flight_id,
+                seat_no = EXCLUDED.seat_no,
+                cost = EXCLUDED.cost%s
+            """;
+    private static final String SAVE_MULTI_ROW_SQL = """
+            INSERT INTO flight_storage.ticket (passenger_no, passenger_name, flight_id, seat_no, cost)
+            VALUES %s
+            RETURNING id, %s
             """;
     //language=POSTGRES-PSQL
     private static final String FIND_ALL_SQL = """
             SELECT 
-            t.id, t.passenger_no, t.passenger_name, t.flight_id, t.seat_no, t.cost,
+            t.id, t.passenger_no, t.passenger_name, t.flight_id, t.seat_no, t.cost, %s,
             f.status, 
             f.aircraft_id, 
             f.arrival_airport_code, 
@@ -40,9 +70,17 @@ public class TicketDao implements Dao<Long, Ticket> {
             FROM flight_storage.ticket t
             JOIN flight_storage.flight f ON t.flight_id = f.id
             """;
-    public static final String FIND_BY_ID_SQL = FIND_ALL_SQL + """
+    private static final String FIND_BY_ID_SQL = FIND_ALL_SQL + """
              WHERE t.id = ?
             """;
+    private static final String FIND_ALL_BY_IDS_SQL = FIND_ALL_SQL + """
+             WHERE t.id = ANY(?)
+            """;
+    private static final String TABLE = "ticket";
+    private static final String VERSION_COLUMN = "version";
+    // Мульти-строчный INSERT строим один раз для каждого размера полной пачки
+    private final Map<Integer, String> saveMultiRowSql = new ConcurrentHashMap<>();
+    private volatile Queries queries;
     private final FlightDao flightDao = FlightDao.getInstance();
 
     /**
@@ -76,48 +114,32 @@ public class TicketDao implements Dao<Long, Ticket> {
      *             }
      * }</pre>
      * Если в фильтре не будет ни одного параметра, то нужно добавить пустую строку вместо WHERE (иначе будет ошибка)
+     * <h2>Готовые запросы</h2>
+     * Собирать SQL и коллекцию параметров на каждом вызове - лишняя работа: вариантов запроса всего несколько, и они
+     * зависят только от того, какие поля фильтра заполнены. Поэтому SQL и порядок параметров для каждого варианта
+     * вычисляются один раз в {@link TicketFilterQueries}, а здесь остаётся выбрать готовый запрос и проставить
+     * параметры.
      *
      * @param filter
      * @return
      */
     public List<Ticket> findAll(TicketFilter filter) {
-        List<Object> parameters = new ArrayList<>();
-        List<String> whereSql = new ArrayList<>();
-
-        if (filter.seatNo() != null) {
-            whereSql.add("seat_no LIKE ?");
-            // % для LIKE оператора
-            parameters.add("%" + filter.seatNo() + "%");
-        }
-        if (filter.passengerName() != null) {
-            whereSql.add("passenger_name = ?");
-            parameters.add(filter.passengerName());
-        }
-        parameters.add(filter.limit());
-        parameters.add(filter.offset());
-
-        // Stream API
-        // ВСЕГДА используем статический импорт для коллекторов
-        String where = whereSql.stream()
-                .collect(joining(" AND ", " WHERE ", " LIMIT ? OFFSET ? "));
-
-        String sql = FIND_ALL_SQL + where;
+        TicketFilterQueries.Query query = queries().filterQueries.get(filter, filter.afterId() != null);
 
         try (
                 Connection connection = ConnectionManager.get();
-                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                PreparedStatement preparedStatement = connection.prepareStatement(query.sql());
         ) {
-            for (int i = 0; i < parameters.size(); i++) {
-                preparedStatement.setObject(i + 1, parameters.get(i));
-            }
-            System.out.println(preparedStatement);
+            query.bind(preparedStatement, filter, filter.limit());
 
             ResultSet resultSet = preparedStatement.executeQuery();
 
             // Результирующий набор тикетов
             List<Ticket> tickets = new ArrayList<>();
+            // Номера колонок и перелёты, уже собранные в рамках этого ResultSet
+            TicketRowMapper mapper = new TicketRowMapper(flightDao);
             while (resultSet.next()) {
-                tickets.add(buildTicket(resultSet));
+                tickets.add(mapper.map(resultSet));
             }
 
             return tickets;
@@ -126,17 +148,138 @@ public class TicketDao implements Dao<Long, Ticket> {
         }
     }
 
+    /**
+     * <h1>Страница билетов с keyset-пагинацией</h1>
+     * Вместо {@code OFFSET} продолжаем с id последнего билета предыдущей страницы ({@link TicketFilter#afterId()}):
+     * <pre>{@code ... WHERE t.id > ? ORDER BY t.id LIMIT ?}</pre>
+     * Запрашиваем на одну строку больше, чем {@code limit} - так без лишнего запроса понятно, есть ли следующая
+     * страница. {@code offset} фильтра здесь не используется.
+     */
+    public Page<Ticket> findPage(TicketFilter filter) {
+        if (filter.limit() <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + filter.limit());
+        }
+        TicketFilterQueries.Query query = queries().filterQueries.get(filter, true);
+
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(query.sql());
+        ) {
+            query.bind(preparedStatement, filter, filter.limit() + 1);
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            List<Ticket> tickets = new ArrayList<>(filter.limit() + 1);
+            TicketRowMapper mapper = new TicketRowMapper(flightDao);
+            while (resultSet.next()) {
+                tickets.add(mapper.map(resultSet));
+            }
+
+            String nextToken = null;
+            if (tickets.size() > filter.limit()) {
+                tickets.remove(tickets.size() - 1);
+                nextToken = TicketFilter.continuationToken(tickets.get(tickets.size() - 1).getId());
+            }
+            return new Page<>(tickets, nextToken);
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    public Stream<Ticket> stream() {
+        return stream(queries().findAllSql, preparedStatement -> {
+        });
+    }
+
+    public Stream<Ticket> stream(TicketFilter filter) {
+        TicketFilterQueries.Query query = queries().filterQueries.get(filter, filter.afterId() != null);
+        return stream(query.sql(), preparedStatement -> query.bind(preparedStatement, filter, filter.limit()));
+    }
+
+    public void forEach(TicketFilter filter, Consumer<Ticket> action) {
+        try (Stream<Ticket> tickets = stream(filter)) {
+            tickets.forEach(action);
+        }
+    }
+
+    /**
+     * <h1>Потоковое чтение билетов</h1>
+     * {@code findAll()} складывает все строки в {@code ArrayList}, более того, драйвер postgres по умолчанию сам
+     * вычитывает в память весь результат запроса. Чтобы драйвер читал строки порциями через курсор, нужно выключить
+     * autoCommit и указать {@code setFetchSize()}.
+     * <br><br>
+     * Здесь соединение держится открытым, пока читается {@link Stream}, а билеты собираются лениво, по мере того, как
+     * их запрашивает stream. Поэтому stream <b>обязательно</b> закрывать (try-with-resources) - при закрытии соединение
+     * возвращается в пул:
+     * <pre>{@code
+     * try (Stream<Ticket> tickets = ticketDao.stream(filter)) {
+     *     tickets.forEach(...);
+     * }
+     * }</pre>
+     * В памяти одновременно лежит не больше {@code STREAM_FETCH_SIZE} строк плюс по одному объекту на каждый
+     * встреченный перелёт.
+     */
+    private Stream<Ticket> stream(String sql, ParameterSetter parameterSetter) {
+        Connection connection = ConnectionManager.get();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            parameterSetter.set(preparedStatement);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            TicketRowMapper mapper = new TicketRowMapper(flightDao);
+
+            Spliterator<Ticket> spliterator = new Spliterators.AbstractSpliterator<>(
+                    Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL
+            ) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Ticket> action) {
+                    try {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                        action.accept(mapper.map(resultSet));
+                        return true;
+                    } catch (SQLException throwables) {
+                        throw new DaoException(throwables);
+                    }
+                }
+            };
+            return StreamSupport.stream(spliterator, false)
+                    .onClose(() -> close(connection));
+        } catch (SQLException throwables) {
+            close(connection);
+            throw new DaoException(throwables);
+        } catch (RuntimeException e) {
+            close(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Закрываем соединение: statement и курсор закроются вместе с ним, а транзакция откатится (мы только читали).
+     */
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
     public List<Ticket> findAll() {
         try (
                 Connection connection = ConnectionManager.get();
-                PreparedStatement preparedStatement = connection.prepareStatement(FIND_ALL_SQL);
+                PreparedStatement preparedStatement = connection.prepareStatement(queries().findAllSql);
         ) {
             ResultSet resultSet = preparedStatement.executeQuery();
 
             List<Ticket> tickets = new ArrayList<>();
+            TicketRowMapper mapper = new TicketRowMapper(flightDao);
 
             while (resultSet.next()) {
-                tickets.add(buildTicket(resultSet));
+                tickets.add(mapper.map(resultSet));
             }
 
             return tickets;
@@ -152,7 +295,7 @@ public class TicketDao implements Dao<Long, Ticket> {
     public Optional<Ticket> findById(Long id) {
         try (
                 Connection connection = ConnectionManager.get();
-                PreparedStatement preparedStatement = connection.prepareStatement(FIND_BY_ID_SQL);
+                PreparedStatement preparedStatement = connection.prepareStatement(queries().findByIdSql);
         ) {
             preparedStatement.setLong(1, id);
 
@@ -161,7 +304,7 @@ public class TicketDao implements Dao<Long, Ticket> {
             Ticket ticket = null;
 
             if (resultSet.next()) {
-                ticket = buildTicket(resultSet);
+                ticket = new TicketRowMapper(flightDao).map(resultSet);
             }
 
             return Optional.ofNullable(ticket);
@@ -171,60 +314,85 @@ public class TicketDao implements Dao<Long, Ticket> {
     }
 
     /**
-     * Каждый ResultSet знает о Statement, который его вызвал и каждый Statement знает о Connection, который его
-     * вызвал:
-     * <pre>{@code
-     * flightDao.findById(
-     *      resultSet.getLong("flight_id"),
-     *      resultSet.getStatement().getConnection()).orElse(null),
-     * }</pre>
-     * Таким образом мы можем получить доступ к нашему соединению из ResultSet.
-     * @param resultSet
-     * @return
-     * @throws SQLException
+     * <h1>Поиск билетов по многим id одним запросом</h1>
+     * Вместо сотен вызовов {@code findById()}, каждый из которых берёт соединение из пула, - один запрос
+     * {@code WHERE t.id = ANY(?)} с массивом id (большие списки режутся на части). Перелёты общие для всех частей.
      */
-    private Ticket buildTicket(ResultSet resultSet) throws SQLException {
-        Flight flight = new Flight(
-                resultSet.getLong("flight_id"),
-                resultSet.getString("flight_no"),
-                resultSet.getTimestamp("departure_date").toLocalDateTime(),
-                resultSet.getString("departure_airport_code"),
-                resultSet.getTimestamp("arrival_date").toLocalDateTime(),
-                resultSet.getString("arrival_airport_code"),
-                resultSet.getInt("aircraft_id"),
-                resultSet.getString("status")
-        );
-        return new Ticket(
-                resultSet.getLong("id"),
-                resultSet.getString("passenger_no"),
-                resultSet.getString("passenger_name"),
-                flightDao.findById(
-                        resultSet.getLong("flight_id"),
-                        resultSet.getStatement().getConnection()).orElse(null),
-                resultSet.getString("seat_no"),
-                resultSet.getBigDecimal("cost")
-        );
+    @Override
+    public Map<Long, Ticket> findAllByIds(Collection<Long> ids) {
+        try (Connection connection = ConnectionManager.get()) {
+            return DaoSupport.findAllByIds(
+                    connection,
+                    queries().findAllByIdsSql,
+                    ids,
+                    new TicketRowMapper(flightDao),
+                    Ticket::getId
+            );
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
     }
 
+    /**
+     * <h1>Обновление с оптимистической блокировкой</h1>
+     * Раньше {@code update()} просто перезаписывал все колонки по id: если два пользователя одновременно прочитали
+     * билет и поменяли в нём разное, то побеждал последний, а изменения первого молча терялись. Блокировать строку
+     * на всё время редактирования ({@code SELECT ... FOR UPDATE}) дорого, поэтому у билета есть версия:
+     * <pre>{@code
+     * UPDATE ... SET ..., version = version + 1 WHERE id = ? AND version = ?
+     * }</pre>
+     * Если кто-то успел обновить билет раньше, то версия в базе уже другая, запрос не изменит ни одной строки, и мы
+     * бросаем {@link OptimisticLockException} - билет нужно перечитать и повторить изменение. После успешного
+     * обновления версия билета увеличивается на единицу. Билет без версии обновляется без проверки, как раньше.
+     * <br><br>
+     * Колонка версии необязательна (см. {@code JdbcRunner.addTicketVersionColumn()}): без неё все билеты читаются
+     * без версии и обновляются без проверки.
+     * <h2>Только изменённые колонки</h2>
+     * В {@code SET} попадают только поля, которые поменяли с момента загрузки ({@link Ticket#getDirtyFields()}), -
+     * запросы для каждого набора колонок заранее собраны в {@link TicketUpdateQueries}. Если ничего не менялось, то
+     * в базу не ходим вовсе.
+     * <h2>Внутри транзакции</h2>
+     * Новую версию и снятие отметок об изменении записываем в билет через {@link TransactionManager#afterCommit}, т.е.
+     * только после commit. Если транзакция откатится или {@code RetryPolicy} выполнит её заново, то билет останется
+     * изменённым и со старой версией, и повтор снова отправит изменения в базу. Поэтому один и тот же билет в одной
+     * транзакции обновляем один раз: второй {@code update()} проверит ещё старую версию и получит
+     * {@link OptimisticLockException}.
+     */
     public void update(Ticket ticket) {
+        Queries queries = queries();
+        Long version = queries.versioned ? ticket.getVersion() : null;
+        TicketUpdateQueries.Query query = queries.updateQueries.get(ticket.getDirtyFields(), version != null);
+        if (query == null) {
+            return;
+        }
         try (
                 Connection connection = ConnectionManager.get();
-                PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_SQL);
+                PreparedStatement preparedStatement = connection.prepareStatement(query.sql());
         ) {
-            preparedStatement.setString(1, ticket.getPassengerNo());
-            preparedStatement.setString(2, ticket.getPassengerName());
-            preparedStatement.setLong(3, ticket.getFlight().id());
-            preparedStatement.setString(4, ticket.getSeatNo());
-            preparedStatement.setBigDecimal(5, ticket.getCost());
-            preparedStatement.setLong(6, ticket.getId());
+            query.bind(preparedStatement, ticket);
 
-            preparedStatement.executeUpdate();
+            Map<Ticket.Field, Object> written = ticket.getDirtyValues();
+            int updated = preparedStatement.executeUpdate();
 
+            if (version != null && updated == 0) {
+                throw new OptimisticLockException(
+                        "Ticket " + ticket.getId() + " was updated or deleted concurrently, version " + version);
+            }
+            TransactionManager.afterCommit(() -> {
+                if (version != null) {
+                    ticket.setVersion(version + 1);
+                }
+                ticket.clearDirty(written);
+            });
         } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
 
+    /**
+     * id и версия записываются в билет только после commit (см. {@link TransactionManager#afterCommit}): если
+     * транзакция откатится, то у билета не должно остаться id строки, которой в базе нет. Вне транзакции - сразу.
+     */
     public Ticket save(Ticket ticket) {
         try (
                 Connection connection = ConnectionManager.get();
@@ -233,27 +401,264 @@ public class TicketDao implements Dao<Long, Ticket> {
                         Statement.RETURN_GENERATED_KEYS
                 );
         ) {
-            preparedStatement.setString(1, ticket.getPassengerNo());
-            preparedStatement.setString(2, ticket.getPassengerName());
-            preparedStatement.setLong(3, ticket.getFlight().id());
-            preparedStatement.setString(4, ticket.getSeatNo());
-            preparedStatement.setBigDecimal(5, ticket.getCost());
+            setTicketParameters(preparedStatement, ticket, 1);
+            Map<Ticket.Field, Object> written = ticket.getDirtyValues();
 
             preparedStatement.executeUpdate();
 
-            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+            GeneratedKey key = readGeneratedKeys(preparedStatement.getGeneratedKeys(), 1).get(0);
+            TransactionManager.afterCommit(() -> {
+                ticket.setId(key.id());
+                ticket.setVersion(key.version());
+                ticket.clearDirty(written);
+            });
+
+            return ticket;
+
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    public List<Ticket> saveAll(Collection<Ticket> tickets) {
+        return saveAll(tickets, DEFAULT_BATCH_SIZE, false);
+    }
 
-            if (generatedKeys.next()) {
-                ticket.setId(generatedKeys.getLong("id"));
+    /**
+     * <h1>Сохранение множества билетов</h1>
+     * {@code save()} на каждый билет берёт соединение из пула и ходит в базу, т.е. сотни тысяч билетов - это сотни
+     * тысяч походов в базу и столько же отдельных транзакций. Здесь все билеты сохраняются в одной транзакции, а в базу
+     * уходят пачками по {@code batchSize} штук:
+     * <ul>
+     *     <li>по умолчанию через {@code addBatch()}/{@code executeBatch()} того же {@code SAVE_SQL}</li>
+     *     <li>если {@code multiRowValues == true}, то пачка превращается в один запрос
+     *     {@code INSERT ... VALUES (...), (...), ... RETURNING id}. Это то же самое, что делает драйвер с параметром
+     *     {@code reWriteBatchedInserts=true}, только без изменения настроек подключения. Так отправляются только
+     *     полные пачки: SQL для каждого размера - отдельная строка в кеше DAO и отдельный запрос в кеше соединения,
+     *     поэтому неполную последнюю пачку отправляем через {@code addBatch()}</li>
+     * </ul>
+     * Сгенерированные id записываются обратно в билеты в том же порядке, в котором билеты были переданы, но только
+     * после commit - в том числе после commit внешней транзакции {@code TransactionManager}, где {@code commit()}
+     * соединения ничего не делает. Если хоть одна пачка упала, то откатываются все, а билеты остаются такими, какими
+     * их передали: без id и с изменёнными полями, т.е. их можно просто сохранить ещё раз.
+     *
+     * @param tickets        билеты для сохранения
+     * @param batchSize      сколько билетов отправляем в базу за один раз
+     * @param multiRowValues собирать ли пачку в один мульти-строчный INSERT
+     * @return сохранённые билеты с проставленными id
+     */
+    public List<Ticket> saveAll(Collection<Ticket> tickets, int batchSize, boolean multiRowValues) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<Ticket> toSave = List.copyOf(tickets);
+        if (toSave.isEmpty()) {
+            return toSave;
+        }
+        int chunkSize = multiRowValues ? Math.min(batchSize, MAX_MULTI_ROW_VALUES) : batchSize;
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            List<GeneratedKey> keys = new ArrayList<>(toSave.size());
+            try {
+                for (int from = 0; from < toSave.size(); from += chunkSize) {
+                    List<Ticket> chunk = toSave.subList(from, Math.min(from + chunkSize, toSave.size()));
+                    keys.addAll(multiRowValues && chunk.size() == chunkSize
+                            ? saveMultiRow(connection, chunk)
+                            : saveBatch(connection, chunk));
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
             }
+            applyAfterCommit(toSave, keys);
+            return toSave;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
 
+    /**
+     * <h1>Вставка или обновление билета</h1>
+     * Один запрос вместо {@code findById()} и затем {@code save()} или {@code update()}. Билет с id, которого ещё
+     * нет в базе, вставляется с этим id (например, при синхронизации из другой системы), существующий -
+     * перезаписывается целиком, версия (если колонка есть) увеличивается. Билет без id просто сохраняется через
+     * {@link #save(Ticket)}.
+     * <br><br>
+     * Последовательность id при вставке с явным id не сдвигается - если такие билеты смешиваются с билетами без id,
+     * то её нужно сдвинуть ({@code setval}) после синхронизации.
+     * <br><br>
+     * Новая версия записывается в билет только после commit (см. {@link TransactionManager#afterCommit}).
+     */
+    @Override
+    public Ticket upsert(Ticket ticket) {
+        if (ticket.getId() == null) {
+            return save(ticket);
+        }
+        try (
+                Connection connection = ConnectionManager.get();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        queries().upsertSql,
+                        Statement.RETURN_GENERATED_KEYS
+                );
+        ) {
+            preparedStatement.setLong(1, ticket.getId());
+            setTicketParameters(preparedStatement, ticket, 2);
+
+            preparedStatement.executeUpdate();
+
+            applyAfterCommit(List.of(ticket), readGeneratedKeys(preparedStatement.getGeneratedKeys(), 1));
             return ticket;
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
 
+    /**
+     * Билеты без id сохраняются так же, как в {@code saveAll()}, остальные - через {@code UPSERT_SQL}, пачками по
+     * {@code DEFAULT_BATCH_SIZE} в одной транзакции. Как и в {@code saveAll()}, id и версии записываются в билеты
+     * только после commit, в том числе внешней транзакции {@code TransactionManager}.
+     */
+    @Override
+    public List<Ticket> upsertAll(Collection<Ticket> tickets) {
+        List<Ticket> toUpsert = List.copyOf(tickets);
+        if (toUpsert.isEmpty()) {
+            return toUpsert;
+        }
+        List<Ticket> inserts = toUpsert.stream().filter(ticket -> ticket.getId() == null).toList();
+        List<Ticket> upserts = toUpsert.stream().filter(ticket -> ticket.getId() != null).toList();
+
+        try (Connection connection = ConnectionManager.get()) {
+            connection.setAutoCommit(false);
+            List<GeneratedKey> insertKeys = new ArrayList<>(inserts.size());
+            List<GeneratedKey> upsertKeys = new ArrayList<>(upserts.size());
+            try {
+                for (int from = 0; from < inserts.size(); from += DEFAULT_BATCH_SIZE) {
+                    List<Ticket> chunk = inserts.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, inserts.size()));
+                    insertKeys.addAll(saveBatch(connection, chunk));
+                }
+                for (int from = 0; from < upserts.size(); from += DEFAULT_BATCH_SIZE) {
+                    List<Ticket> chunk = upserts.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, upserts.size()));
+                    upsertKeys.addAll(upsertBatch(connection, chunk));
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+            applyAfterCommit(inserts, insertKeys);
+            applyAfterCommit(upserts, upsertKeys);
+            return toUpsert;
         } catch (SQLException throwables) {
             throw new DaoException(throwables);
         }
     }
 
+    private List<GeneratedKey> upsertBatch(Connection connection, List<Ticket> chunk) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+                queries().upsertSql,
+                Statement.RETURN_GENERATED_KEYS
+        )) {
+            for (Ticket ticket : chunk) {
+                preparedStatement.setLong(1, ticket.getId());
+                setTicketParameters(preparedStatement, ticket, 2);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+
+            return readGeneratedKeys(preparedStatement.getGeneratedKeys(), chunk.size());
+        }
+    }
+
+    private List<GeneratedKey> saveBatch(Connection connection, List<Ticket> chunk) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+                SAVE_SQL,
+                Statement.RETURN_GENERATED_KEYS
+        )) {
+            for (Ticket ticket : chunk) {
+                setTicketParameters(preparedStatement, ticket, 1);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+
+            return readGeneratedKeys(preparedStatement.getGeneratedKeys(), chunk.size());
+        }
+    }
+
+    /**
+     * Postgres возвращает строки из {@code RETURNING} в порядке {@code VALUES}, поэтому id раздаём по порядку.
+     */
+    private List<GeneratedKey> saveMultiRow(Connection connection, List<Ticket> chunk) throws SQLException {
+        String sql = saveMultiRowSql.computeIfAbsent(chunk.size(), size -> SAVE_MULTI_ROW_SQL.formatted(
+                String.join(", ", Collections.nCopies(size, "(?, ?, ?, ?, ?)")),
+                queries().returnedVersion
+        ));
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (Ticket ticket : chunk) {
+                setTicketParameters(preparedStatement, ticket, index);
+                index += 5;
+            }
+
+            return readGeneratedKeys(preparedStatement.executeQuery(), chunk.size());
+        }
+    }
+
+    private List<GeneratedKey> readGeneratedKeys(ResultSet generatedKeys, int count) throws SQLException {
+        List<GeneratedKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (!generatedKeys.next()) {
+                throw new SQLException("Expected " + count + " generated keys");
+            }
+            keys.add(new GeneratedKey(generatedKeys.getLong("id"), readVersion(generatedKeys)));
+        }
+        return keys;
+    }
+
+    /**
+     * Без колонки версии драйвер ({@code RETURNING *}) её не вернёт, а мульти-строчный INSERT вернёт {@code NULL}.
+     */
+    private Long readVersion(ResultSet generatedKeys) throws SQLException {
+        return queries().versioned ? generatedKeys.getObject(VERSION_COLUMN, Long.class) : null;
+    }
+
+    /**
+     * Записываем id и версии в билеты через {@link TransactionManager#afterCommit}, т.е. после commit транзакции
+     * (вне транзакции - сразу). Снимок изменённых полей делаем сейчас, сразу после отправки билетов в базу, чтобы не
+     * снять отметки с полей, которые поменяют уже после записи.
+     */
+    private static void applyAfterCommit(List<Ticket> tickets, List<GeneratedKey> keys) {
+        List<Map<Ticket.Field, Object>> written = tickets.stream().map(Ticket::getDirtyValues).toList();
+        TransactionManager.afterCommit(() -> {
+            for (int i = 0; i < tickets.size(); i++) {
+                Ticket ticket = tickets.get(i);
+                ticket.setId(keys.get(i).id());
+                ticket.setVersion(keys.get(i).version());
+                ticket.clearDirty(written.get(i));
+            }
+        });
+    }
+
+    /**
+     * id и версия, которые база вернула для одного билета. В билеты их записываем только после commit: если
+     * транзакция откатится, то у билетов не должно остаться id строк, которых в базе нет.
+     */
+    private record GeneratedKey(Long id, Long version) {
+    }
+
+    /**
+     * Проставляем 5 колонок билета начиная с параметра {@code firstIndex}.
+     */
+    private void setTicketParameters(PreparedStatement preparedStatement, Ticket ticket, int firstIndex)
+            throws SQLException {
+        preparedStatement.setString(firstIndex, ticket.getPassengerNo());
+        preparedStatement.setString(firstIndex + 1, ticket.getPassengerName());
+        preparedStatement.setLong(firstIndex + 2, ticket.getFlight().id());
+        preparedStatement.setString(firstIndex + 3, ticket.getSeatNo());
+        preparedStatement.setBigDecimal(firstIndex + 4, ticket.getCost());
+    }
+
     public boolean delete(Long id) {
         try (
                 Connection connection = ConnectionManager.get();
@@ -268,6 +673,52 @@ public class TicketDao implements Dao<Long, Ticket> {
     }
 
 
+    private Queries queries() {
+        Queries current = queries;
+        if (current == null) {
+            // два потока могут проверить схему одновременно, но запросы у них получатся одинаковые
+            current = new Queries(SchemaCatalog.getInstance().hasColumn(TABLE, VERSION_COLUMN));
+            queries = current;
+        }
+        return current;
+    }
+
+    /**
+     * <h1>Запросы с версией и без</h1>
+     * Колонка версии в {@code ticket} необязательна: её добавляет миграция {@code JdbcRunner.addTicketVersionColumn()}.
+     * Есть ли колонка, проверяем по {@link SchemaCatalog} один раз, при первом запросе, и дальше берём готовые запросы
+     * нужного вида. Без колонки билеты читаются с версией {@code null}, а {@code update()} и {@code upsert()} работают
+     * без оптимистической блокировки - как до её появления. Если миграцию запустили при работающем приложении, то
+     * версии появятся после перезапуска.
+     */
+    private static final class Queries {
+        private final boolean versioned;
+        private final String findAllSql;
+        private final String findByIdSql;
+        private final String findAllByIdsSql;
+        private final String upsertSql;
+        private final String returnedVersion;
+        private final TicketFilterQueries filterQueries;
+        private final TicketUpdateQueries updateQueries;
+
+        private Queries(boolean versioned) {
+            String selectedVersion = versioned ? "t.version" : "NULL::bigint AS version";
+            this.versioned = versioned;
+            this.findAllSql = FIND_ALL_SQL.formatted(selectedVersion);
+            this.findByIdSql = FIND_BY_ID_SQL.formatted(selectedVersion);
+            this.findAllByIdsSql = FIND_ALL_BY_IDS_SQL.formatted(selectedVersion);
+            this.upsertSql = UPSERT_SQL.formatted(versioned ? ",\n    version = t.version + 1" : "");
+            this.returnedVersion = versioned ? "version" : "NULL::bigint AS version";
+            this.filterQueries = new TicketFilterQueries(findAllSql);
+            this.updateQueries = new TicketUpdateQueries(versioned);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParameterSetter {
+        void set(PreparedStatement preparedStatement) throws SQLException;
+    }
+
     private static final TicketDao INSTANCE = new TicketDao();
 
     private TicketDao() {
@@ -0,0 +1,111 @@
+package dao;
+
+import dto.TicketFilter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * <h1>Заранее собранные запросы для TicketFilter</h1>
+ * Вариантов SQL у фильтра немного: есть ли {@code seatNo}, есть ли {@code passengerName}, есть ли {@code afterId} и
+ * какая пагинация - keyset или {@code LIMIT/OFFSET}. Это всего 16 "форм" фильтра, поэтому для каждой формы SQL и
+ * порядок установки параметров вычисляем один раз при создании DAO, а на каждом вызове остаётся только выбрать
+ * готовый {@link Query} по битовой маске и проставить параметры. Раз SQL для одной формы всегда одна и та же строка,
+ * то и {@code PreparedStatement} для неё берётся из кеша соединения.
+ */
+final class TicketFilterQueries {
+    private static final int SEAT_NO = 1;
+    private static final int PASSENGER_NAME = 1 << 1;
+    private static final int AFTER_ID = 1 << 2;
+    private static final int KEYSET = 1 << 3;
+
+    private final Query[] queries = new Query[16];
+
+    TicketFilterQueries(String baseSql) {
+        for (int shape = 0; shape < queries.length; shape++) {
+            queries[shape] = compile(baseSql, shape);
+        }
+    }
+
+    /**
+     * @param keyset keyset-пагинация ({@code ORDER BY t.id LIMIT ?}) вместо {@code LIMIT ? OFFSET ?}
+     */
+    Query get(TicketFilter filter, boolean keyset) {
+        int shape = 0;
+        if (filter.seatNo() != null) {
+            shape |= SEAT_NO;
+        }
+        if (filter.passengerName() != null) {
+            shape |= PASSENGER_NAME;
+        }
+        if (keyset) {
+            shape |= KEYSET;
+            if (filter.afterId() != null) {
+                shape |= AFTER_ID;
+            }
+        }
+        return queries[shape];
+    }
+
+    private static Query compile(String baseSql, int shape) {
+        List<String> whereSql = new ArrayList<>();
+        List<ParameterBinder> binders = new ArrayList<>();
+        boolean keyset = (shape & KEYSET) != 0;
+
+        if ((shape & SEAT_NO) != 0) {
+            whereSql.add("seat_no LIKE ?");
+            // % для LIKE оператора
+            binders.add((statement, index, filter, limit) ->
+                    statement.setString(index, "%" + filter.seatNo() + "%"));
+        }
+        if ((shape & PASSENGER_NAME) != 0) {
+            whereSql.add("passenger_name = ?");
+            binders.add((statement, index, filter, limit) -> statement.setString(index, filter.passengerName()));
+        }
+        if (keyset && (shape & AFTER_ID) != 0) {
+            whereSql.add("t.id > ?");
+            binders.add((statement, index, filter, limit) -> statement.setLong(index, filter.afterId()));
+        }
+        binders.add((statement, index, filter, limit) -> statement.setInt(index, limit));
+        if (!keyset) {
+            binders.add((statement, index, filter, limit) -> statement.setInt(index, filter.offset()));
+        }
+
+        String where = whereSql.stream()
+                .collect(joining(" AND ", whereSql.isEmpty() ? "" : " WHERE ", ""));
+        String sql = baseSql + where + (keyset ? " ORDER BY t.id LIMIT ? " : " LIMIT ? OFFSET ? ");
+        return new Query(sql, binders.toArray(ParameterBinder[]::new));
+    }
+
+    /**
+     * Готовый запрос одной формы фильтра: SQL и установщики параметров в порядке знаков вопроса.
+     */
+    static final class Query {
+        private final String sql;
+        private final ParameterBinder[] binders;
+
+        private Query(String sql, ParameterBinder[] binders) {
+            this.sql = sql;
+            this.binders = binders;
+        }
+
+        String sql() {
+            return sql;
+        }
+
+        void bind(PreparedStatement statement, TicketFilter filter, int limit) throws SQLException {
+            for (int i = 0; i < binders.length; i++) {
+                binders[i].bind(statement, i + 1, filter, limit);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement statement, int index, TicketFilter filter, int limit) throws SQLException;
+    }
+}
@@ -0,0 +1,93 @@
+package dao;
+
+import entity.Flight;
+import entity.Ticket;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1>Билет из строки по номерам колонок</h1>
+ * Каждый ResultSet знает о Statement, который его вызвал и каждый Statement знает о Connection, который его
+ * вызвал:
+ * <pre>{@code
+ * flightDao.findById(
+ *      resultSet.getLong("flight_id"),
+ *      resultSet.getStatement().getConnection()).orElse(null),
+ * }</pre>
+ * Таким образом мы можем получить доступ к нашему соединению из ResultSet. Но так на каждую строку билета
+ * выполняется ещё один запрос (проблема <i>N+1</i>), хотя запросы {@code TicketDao} уже делают JOIN с таблицей flight
+ * и все колонки перелёта лежат в этой же строке. Поэтому перелёт собираем прямо из текущей строки.
+ * <br><br>
+ * {@code flights} - это identity map в рамках одного маппера, т.е. одного запроса: билеты одного перелёта ссылаются
+ * на один и тот же объект {@code Flight}, и повторно мы его не собираем.
+ * <br><br>
+ * В кеш {@link FlightDao} не смотрим: свежие колонки перелёта уже лежат в строке, а перелёт из кеша может быть
+ * старше (например, внутри транзакции, которая только что этот перелёт изменила). Собранный перелёт только прогревает
+ * кеш, и только если запрос выполнен в режиме autoCommit, т.е. прочитаны закоммиченные данные.
+ */
+public final class TicketRowMapper implements RowMapper<Ticket> {
+    private final FlightDao flightDao;
+    private final FlightRowMapper flightMapper = new FlightRowMapper("flight_id");
+    private final Map<Long, Flight> flights = new HashMap<>();
+
+    private boolean resolved;
+    private boolean committed;
+    private int id;
+    private int passengerNo;
+    private int passengerName;
+    private int flightId;
+    private int seatNo;
+    private int cost;
+    private int version;
+
+    public TicketRowMapper() {
+        this(FlightDao.getInstance());
+    }
+
+    TicketRowMapper(FlightDao flightDao) {
+        this.flightDao = flightDao;
+    }
+
+    @Override
+    public Ticket map(ResultSet resultSet) throws SQLException {
+        if (!resolved) {
+            resolve(resultSet.getMetaData());
+            committed = resultSet.getStatement().getConnection().getAutoCommit();
+        }
+        Long ticketFlightId = resultSet.getLong(flightId);
+        Flight flight = flights.get(ticketFlightId);
+        if (flight == null) {
+            flight = flightMapper.map(resultSet);
+            if (committed) {
+                flightDao.cache(flight);
+            }
+            flights.put(ticketFlightId, flight);
+        }
+        Ticket ticket = new Ticket(
+                resultSet.getLong(id),
+                resultSet.getString(passengerNo),
+                resultSet.getString(passengerName),
+                flight,
+                resultSet.getString(seatNo),
+                resultSet.getBigDecimal(cost),
+                resultSet.getObject(version, Long.class)
+        );
+        ticket.clearDirty();
+        return ticket;
+    }
+
+    private void resolve(ResultSetMetaData metaData) throws SQLException {
+        id = RowMapper.columnIndex(metaData, "id");
+        passengerNo = RowMapper.columnIndex(metaData, "passenger_no");
+        passengerName = RowMapper.columnIndex(metaData, "passenger_name");
+        flightId = RowMapper.columnIndex(metaData, "flight_id");
+        seatNo = RowMapper.columnIndex(metaData, "seat_no");
+        cost = RowMapper.columnIndex(metaData, "cost");
+        version = RowMapper.columnIndex(metaData, "version");
+        resolved = true;
+    }
+}
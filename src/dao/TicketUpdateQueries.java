@@ -0,0 +1,133 @@
+package dao;
+
+import entity.Ticket;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>Заранее собранные UPDATE для изменённых полей билета</h1>
+ * Чаще всего у билета меняется одно поле, например цена, а полный UPDATE всё равно отправляет все пять колонок.
+ * Postgres в любом случае пишет новую версию строки целиком, но если не трогать колонки, по которым есть индексы, то
+ * он может не обновлять индексы (HOT update), а запрос и запись в WAL становятся меньше.
+ * <br><br>
+ * Как и в {@link TicketFilterQueries}, вариантов немного: 5 полей - это 32 набора колонок, и каждый может быть с
+ * проверкой версии или без. Все 64 запроса собираются один раз при создании DAO, а на каждом вызове остаётся выбрать
+ * готовый {@link Query} по битовой маске изменённых полей.
+ * <br><br>
+ * Версию увеличиваем и при обновлении без проверки - иначе тот, кто прочитал билет до этого обновления, не заметит,
+ * что билет изменился. Если колонки версии в таблице нет, то собираются только 32 запроса без версии.
+ */
+final class TicketUpdateQueries {
+    private static final Ticket.Field[] FIELDS = Ticket.Field.values();
+    private static final int VERSIONED = 1 << FIELDS.length;
+
+    private final Query[] queries = new Query[VERSIONED << 1];
+
+    private final boolean versionColumn;
+
+    /**
+     * @param versionColumn есть ли в таблице колонка {@code version}
+     */
+    TicketUpdateQueries(boolean versionColumn) {
+        this.versionColumn = versionColumn;
+        int shapes = versionColumn ? queries.length : VERSIONED;
+        for (int shape = 1; shape < shapes; shape++) {
+            if ((shape & (VERSIONED - 1)) != 0) {
+                queries[shape] = compile(shape, versionColumn);
+            }
+        }
+    }
+
+    /**
+     * @return запрос для изменённых полей или {@code null}, если ничего не изменилось
+     */
+    Query get(Set<Ticket.Field> dirtyFields, boolean versioned) {
+        int shape = 0;
+        for (Ticket.Field field : dirtyFields) {
+            shape |= 1 << field.ordinal();
+        }
+        if (versioned) {
+            if (!versionColumn) {
+                throw new IllegalStateException("Table ticket has no version column");
+            }
+            shape |= VERSIONED;
+        }
+        return queries[shape];
+    }
+
+    private static Query compile(int shape, boolean versionColumn) {
+        List<String> setSql = new ArrayList<>();
+        List<ParameterBinder> binders = new ArrayList<>();
+
+        for (Ticket.Field field : FIELDS) {
+            if ((shape & (1 << field.ordinal())) == 0) {
+                continue;
+            }
+            switch (field) {
+                case PASSENGER_NO -> {
+                    setSql.add("passenger_no = ?");
+                    binders.add((statement, index, ticket) -> statement.setString(index, ticket.getPassengerNo()));
+                }
+                case PASSENGER_NAME -> {
+                    setSql.add("passenger_name = ?");
+                    binders.add((statement, index, ticket) -> statement.setString(index, ticket.getPassengerName()));
+                }
+                case FLIGHT -> {
+                    setSql.add("flight_id = ?");
+                    binders.add((statement, index, ticket) -> statement.setLong(index, ticket.getFlight().id()));
+                }
+                case SEAT_NO -> {
+                    setSql.add("seat_no = ?");
+                    binders.add((statement, index, ticket) -> statement.setString(index, ticket.getSeatNo()));
+                }
+                case COST -> {
+                    setSql.add("cost = ?");
+                    binders.add((statement, index, ticket) -> statement.setBigDecimal(index, ticket.getCost()));
+                }
+            }
+        }
+        if (versionColumn) {
+            setSql.add("version = version + 1");
+        }
+        binders.add((statement, index, ticket) -> statement.setLong(index, ticket.getId()));
+
+        String sql = "UPDATE flight_storage.ticket SET " + String.join(", ", setSql) + " WHERE id = ?";
+        if ((shape & VERSIONED) != 0) {
+            sql += " AND version = ?";
+            binders.add((statement, index, ticket) -> statement.setLong(index, ticket.getVersion()));
+        }
+        return new Query(sql, binders.toArray(ParameterBinder[]::new));
+    }
+
+    /**
+     * Готовый UPDATE одного набора колонок: SQL и установщики параметров в порядке знаков вопроса.
+     */
+    static final class Query {
+        private final String sql;
+        private final ParameterBinder[] binders;
+
+        private Query(String sql, ParameterBinder[] binders) {
+            this.sql = sql;
+            this.binders = binders;
+        }
+
+        String sql() {
+            return sql;
+        }
+
+        void bind(PreparedStatement statement, Ticket ticket) throws SQLException {
+            for (int i = 0; i < binders.length; i++) {
+                binders[i].bind(statement, i + 1, ticket);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement statement, int index, Ticket ticket) throws SQLException;
+    }
+}
@@ -0,0 +1,10 @@
+package dto;
+
+/**
+ * Длина и md5 картинки, посчитанные на стороне базы, - по ним проверяем, не устарела ли локальная копия.
+ *
+ * @param length длина в байтах
+ * @param md5    md5 в hex, как возвращает функция {@code md5()} postgres
+ */
+public record ImageFingerprint(long length, String md5) {
+}
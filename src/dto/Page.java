@@ -0,0 +1,13 @@
+package dto;
+
+import java.util.List;
+
+/**
+ * Страница результатов. {@code nextToken} - непрозрачный токен, по которому запрашивается следующая страница
+ * ({@link TicketFilter#after(String)}), {@code null} если это последняя страница.
+ */
+public record Page<T>(List<T> items, String nextToken) {
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,7 @@
+package dto;
+
+/**
+ * Пассажир, на которого бронируется место.
+ */
+public record Passenger(String passengerNo, String passengerName) {
+}
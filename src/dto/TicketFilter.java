@@ -1,5 +1,8 @@
 package dto;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 /**
  * <b>dto</b> (data transform object) - это шаблон проектирования, суть которого заключается в содержании
  * объектов, в которых есть перечень полей. Т.е. он гораздо проще, чем DAO и следовательно, такие объекты используются
@@ -16,6 +19,45 @@ package dto;
  * public record TicketFilter(int limit, int offset, String passengerName, String seatNo) {
  * }
  * }</pre>
+ * <h2>Keyset-пагинация</h2>
+ * С {@code LIMIT ? OFFSET ?} каждая следующая страница медленнее предыдущей: postgres должен прочитать и выбросить
+ * все {@code offset} строк. Поэтому вместо номера страницы запоминаем id последнего билета ({@code afterId}) и
+ * продолжаем с него: {@code WHERE t.id > ? ORDER BY t.id LIMIT ?} - по индексу первичного ключа это стоит одинаково
+ * для первой и для десятитысячной страницы. Наружу id не отдаём, а отдаём непрозрачный токен:
+ * <pre>{@code
+ * Page<Ticket> page = ticketDao.findPage(filter);
+ * Page<Ticket> next = ticketDao.findPage(filter.after(page.nextToken()));
+ * }</pre>
  */
-public record TicketFilter(int limit, int offset, String passengerName, String seatNo) {
+public record TicketFilter(int limit, int offset, String passengerName, String seatNo, Long afterId) {
+    private static final String TOKEN_PREFIX = "ticket:";
+
+    public TicketFilter(int limit, int offset, String passengerName, String seatNo) {
+        this(limit, offset, passengerName, seatNo, null);
+    }
+
+    /**
+     * Фильтр для следующей страницы, продолжающей страницу с токеном {@code continuationToken}.
+     */
+    public TicketFilter after(String continuationToken) {
+        return new TicketFilter(limit, 0, passengerName, seatNo, decode(continuationToken));
+    }
+
+    public static String continuationToken(Long lastId) {
+        byte[] token = (TOKEN_PREFIX + lastId).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    private static Long decode(String continuationToken) {
+        String token;
+        try {
+            token = new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + continuationToken, e);
+        }
+        if (!token.startsWith(TOKEN_PREFIX)) {
+            throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+        }
+        return Long.valueOf(token.substring(TOKEN_PREFIX.length()));
+    }
 }
@@ -1,12 +1,26 @@
 package entity;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * <h1>DAO. Сложный entity mapping</h1>
  * Разреберм маппинги, у которых есть ссылки на другие сущности.
  * <br><br>
  * В поле flightId создадим класс record (в качестве эксперимента, т.к. не надо писать никакого кода в нашем случае)
+ * <h2>Версия</h2>
+ * {@code version} - номер версии строки для оптимистической блокировки: его читают вместе с билетом, а
+ * {@code update()} меняет строку, только если версия в базе всё ещё та же. {@code null} - версия неизвестна
+ * (например, билет собран не из базы или в таблице ещё нет колонки версии), такой билет обновляется без проверки.
+ * <h2>Изменённые поля</h2>
+ * Билет помнит, какие поля ({@link Field}) поменяли через сеттеры с момента загрузки из базы или сохранения, чтобы
+ * {@code update()} отправлял в базу только их. Билет, созданный конструктором с полями, считается изменённым целиком -
+ * о его состоянии в базе мы ничего не знаем. После загрузки и сохранения DAO вызывает {@link #clearDirty()}.
  */
 public class Ticket {
     private Long id;
@@ -15,6 +29,8 @@ public class Ticket {
     private Flight flight;
     private String seatNo;
     private BigDecimal cost;
+    private Long version;
+    private final Set<Field> dirty = EnumSet.noneOf(Field.class);
 
     /**
      * В ORM Hibernate обязательно должен быть пустой конструктор
@@ -29,6 +45,13 @@ public class Ticket {
         this.flight = flight;
         this.seatNo = seatNo;
         this.cost = cost;
+        dirty.addAll(EnumSet.allOf(Field.class));
+    }
+
+    public Ticket(Long id, String passengerNo, String passengerName, Flight flight, String seatNo, BigDecimal cost,
+                  Long version) {
+        this(id, passengerNo, passengerName, flight, seatNo, cost);
+        this.version = version;
     }
 
     public Long getId() {
@@ -44,6 +67,7 @@ public class Ticket {
     }
 
     public void setPassengerNo(String passengerNo) {
+        mark(Field.PASSENGER_NO, this.passengerNo, passengerNo);
         this.passengerNo = passengerNo;
     }
 
@@ -52,6 +76,7 @@ public class Ticket {
     }
 
     public void setPassengerName(String passengerName) {
+        mark(Field.PASSENGER_NAME, this.passengerName, passengerName);
         this.passengerName = passengerName;
     }
 
@@ -60,6 +85,7 @@ public class Ticket {
     }
 
     public void setFlight(Flight flight) {
+        mark(Field.FLIGHT, this.flight, flight);
         this.flight = flight;
     }
 
@@ -68,6 +94,7 @@ public class Ticket {
     }
 
     public void setSeatNo(String seatNo) {
+        mark(Field.SEAT_NO, this.seatNo, seatNo);
         this.seatNo = seatNo;
     }
 
@@ -76,9 +103,78 @@ public class Ticket {
     }
 
     public void setCost(BigDecimal cost) {
+        mark(Field.COST, this.cost, cost);
         this.cost = cost;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return поля, изменённые с момента загрузки или сохранения
+     */
+    public Set<Field> getDirtyFields() {
+        return Collections.unmodifiableSet(dirty);
+    }
+
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Состояние билета совпадает с базой - вызывается DAO после загрузки, сохранения и обновления.
+     */
+    public void clearDirty() {
+        dirty.clear();
+    }
+
+    /**
+     * Снимок изменённых полей и их текущих значений - то, что {@code update()} отправит в базу.
+     */
+    public Map<Field, Object> getDirtyValues() {
+        Map<Field, Object> values = new EnumMap<>(Field.class);
+        for (Field field : dirty) {
+            values.put(field, value(field));
+        }
+        return values;
+    }
+
+    /**
+     * Записанные в базу поля больше не изменены - но только если с момента снимка {@link #getDirtyValues()} их не
+     * поменяли снова. Нужно, когда состояние применяется позже записи, например после commit транзакции.
+     */
+    public void clearDirty(Map<Field, Object> written) {
+        written.forEach((field, value) -> {
+            if (Objects.equals(value(field), value)) {
+                dirty.remove(field);
+            }
+        });
+    }
+
+    private Object value(Field field) {
+        return switch (field) {
+            case PASSENGER_NO -> passengerNo;
+            case PASSENGER_NAME -> passengerName;
+            case FLIGHT -> flight;
+            case SEAT_NO -> seatNo;
+            case COST -> cost;
+        };
+    }
+
+    /**
+     * Присвоение того же значения изменением не считаем.
+     */
+    private void mark(Field field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            dirty.add(field);
+        }
+    }
+
     @Override
     public String toString() {
         return "Ticket{" +
@@ -88,6 +184,19 @@ public class Ticket {
                 ", flight=" + flight +
                 ", seatNo='" + seatNo + '\'' +
                 ", cost=" + cost +
+                ", version=" + version +
                 '}';
     }
-}
\ No newline at end of file
+
+    /**
+     * Поля билета, которые хранятся в отдельных колонках и могут меняться. {@code id} и {@code version} сюда не
+     * входят - их меняет только DAO.
+     */
+    public enum Field {
+        PASSENGER_NO,
+        PASSENGER_NAME,
+        FLIGHT,
+        SEAT_NO,
+        COST
+    }
+}
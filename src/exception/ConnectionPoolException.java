@@ -0,0 +1,13 @@
+package exception;
+
+public class ConnectionPoolException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionPoolException(String message) {
+        super(message);
+    }
+
+    public ConnectionPoolException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -1,6 +1,12 @@
 package exception;
 
 public class DaoException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DaoException(String message) {
+        super(message);
+    }
+
     public DaoException(Throwable throwable) {
         super(throwable);
     }
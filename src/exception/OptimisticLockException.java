@@ -0,0 +1,12 @@
+package exception;
+
+/**
+ * Строку успели изменить после того, как мы её прочитали: версия в базе уже не та, что у сущности.
+ */
+public class OptimisticLockException extends DaoException {
+    private static final long serialVersionUID = 1L;
+
+    public OptimisticLockException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package util;
+
+/**
+ * <h1>Колонка таблицы</h1>
+ *
+ * @param name     имя колонки
+ * @param index    номер колонки (с 1) среди колонок таблицы - такой же, как у неё в {@code SELECT *}. Не путать с
+ *                 {@code ORDINAL_POSITION} из метаданных: в postgres это {@code attnum}, и после удаления колонок в
+ *                 нём остаются дыры
+ * @param sqlType  тип из {@link java.sql.Types}
+ * @param typeName имя типа в базе, например {@code varchar} или {@code bytea}
+ * @param nullable допускает ли колонка null
+ */
+public record ColumnMetadata(String name, int index, int sqlType, String typeName, boolean nullable) {
+}
@@ -1,13 +1,8 @@
 package util;
 
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * <h1>Connection pool (Пул соединений)</h1>
@@ -33,6 +28,20 @@ import java.util.concurrent.BlockingQueue;
  * На реальной практике таких классов не создают, потому что уже есть готовые библиотеки.
  * <br>
  * В <b>application.properties</b> указываем {@code db.pool.size=5}.
+ * <h2>Таймауты, проверка соединений и метрики</h2>
+ * Очередь с {@code pool.take()} ждёт бесконечно: при всплеске нагрузки запросы просто висят. Поэтому сама логика
+ * пула вынесена в {@link ConnectionPool}, а здесь остался тот же {@code ConnectionManager.get()}. Настройки пула
+ * (все времена в миллисекундах):
+ * <pre>{@code
+ * db.pool.size=5                      // максимальное количество соединений
+ * db.pool.min.size=2                  // сколько соединений держим открытыми всегда
+ * db.pool.acquire.timeout=5000        // сколько ждём свободное соединение
+ * db.pool.idle.timeout=600000         // через сколько закрываем простаивающее соединение
+ * db.pool.max.lifetime=1800000        // максимальное время жизни соединения
+ * db.pool.validation.timeout=1000     // таймаут проверки соединения
+ * db.pool.housekeeping.period=30000   // как часто чистим пул
+ * db.pool.statement.cache.size=32     // сколько подготовленных запросов кешируем на соединение
+ * }</pre>
  */
 public final class ConnectionManager {
 
@@ -40,12 +49,22 @@ public final class ConnectionManager {
     private static final String USERNAME_KEY = "db.username";
     private static final String PASSWORD_KEY = "db.password";
     private static final String POOL_SIZE_KEY = "db.pool.size";
+    private static final String POOL_MIN_SIZE_KEY = "db.pool.min.size";
+    private static final String ACQUIRE_TIMEOUT_KEY = "db.pool.acquire.timeout";
+    private static final String IDLE_TIMEOUT_KEY = "db.pool.idle.timeout";
+    private static final String MAX_LIFETIME_KEY = "db.pool.max.lifetime";
+    private static final String VALIDATION_TIMEOUT_KEY = "db.pool.validation.timeout";
+    private static final String HOUSEKEEPING_PERIOD_KEY = "db.pool.housekeeping.period";
+    private static final String STATEMENT_CACHE_SIZE_KEY = "db.pool.statement.cache.size";
     private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_ACQUIRE_TIMEOUT = 30_000;
+    private static final long DEFAULT_IDLE_TIMEOUT = 600_000;
+    private static final long DEFAULT_MAX_LIFETIME = 1_800_000;
+    private static final long DEFAULT_VALIDATION_TIMEOUT = 1_000;
+    private static final long DEFAULT_HOUSEKEEPING_PERIOD = 30_000;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
 
-    // Объявляем потокобезопасною очередь
-    private static BlockingQueue<Connection> pool;
-    // Объявляем список для закрытия соединений. Здесь храним исходные соединения
-    private static List<Connection> sourceConnections;
+    private static ConnectionPool pool;
 
     static {
         loadDriver();
@@ -58,45 +77,63 @@ public final class ConnectionManager {
 
     /**
      * <h1>Метод, который инициализирует пул соединений</h1>
+     * Если минимальный размер не указан, то, как и раньше, сразу открываем все {@code db.pool.size} соединений.
      */
     private static void initConnectionPool() {
-        // Получаем размер пула
-        String poolSize = PropertiesUtil.get(POOL_SIZE_KEY);
-        // Устанавливаем размер
-        int size = poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize);
-        // Инициализируем массив потокобезопасной очереди
-        pool = new ArrayBlockingQueue<>(size);
-
-        sourceConnections = new ArrayList<>(size);
-
-        // Проходимся по пулу и вставляем туда все наши соединения
-        for (int i = 0; i < size; i++) {
-            Connection connection = open();
-            // Reflection API
-            Connection proxyConnection = (Connection) Proxy.newProxyInstance(
-                    ConnectionManager.class.getClassLoader(),
-                    new Class[]{Connection.class},
-                    ((proxy, method, args) -> method.getName().equals("close")
-                            ? pool.add((Connection) proxy)
-                            : method.invoke(connection, args)
-                    )
-            );
-            pool.add(proxyConnection);
-            sourceConnections.add(connection);
-        }
+        int size = (int) getLong(POOL_SIZE_KEY, DEFAULT_POOL_SIZE);
+        int minSize = (int) getLong(POOL_MIN_SIZE_KEY, size);
+
+        PoolConfig config = new PoolConfig(
+                minSize,
+                size,
+                getLong(ACQUIRE_TIMEOUT_KEY, DEFAULT_ACQUIRE_TIMEOUT),
+                getLong(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT),
+                getLong(MAX_LIFETIME_KEY, DEFAULT_MAX_LIFETIME),
+                getLong(VALIDATION_TIMEOUT_KEY, DEFAULT_VALIDATION_TIMEOUT),
+                getLong(HOUSEKEEPING_PERIOD_KEY, DEFAULT_HOUSEKEEPING_PERIOD),
+                (int) getLong(STATEMENT_CACHE_SIZE_KEY, DEFAULT_STATEMENT_CACHE_SIZE)
+        );
+        pool = new ConnectionPool(config, ConnectionManager::open);
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertiesUtil.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
     }
 
     /**
      * <h1>Открытый метод, который достаёт соединения из нашего пулла</h1>
      *
-     * @return Возвращаем соединение, если оно есть. Если пул пустой, тогда ждёт.
+     * Внутри {@link TransactionManager#inTransaction(TransactionManager.TransactionCallback)} возвращает соединение
+     * текущей транзакции, поэтому DAO участвуют в ней без передачи соединения параметром.
+     *
+     * @return Возвращаем соединение, если оно есть. Если пул пустой, тогда ждёт, но не дольше
+     * {@code db.pool.acquire.timeout}, после чего бросает {@link exception.ConnectionPoolException}.
      */
     public static Connection get() {
-        try {
-            return pool.take();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        Connection current = TransactionManager.currentConnection();
+        return current != null ? current : pool.borrow();
+    }
+
+    /**
+     * Новое соединение из пула, даже если у потока уже есть транзакция.
+     */
+    static PooledConnection borrow() {
+        return (PooledConnection) pool.borrow();
+    }
+
+    /**
+     * @return максимальное количество соединений в пуле
+     */
+    public static int poolSize() {
+        return pool.config().maxSize();
+    }
+
+    /**
+     * @return текущие метрики пула: активные и свободные соединения, ожидания, таймауты
+     */
+    public static PoolStats stats() {
+        return pool.stats();
     }
 
     private static Connection open() {
@@ -114,22 +151,12 @@ public final class ConnectionManager {
 
     /**
      * <h1>Метод для закрытия соединения в пулле</h1>
-     * Здесь мы должны пройтись по каждому соединению и закрыть его, но вызов метода {@code .close()} у {@code Proxy}
-     * возвращает в пул, а не закрывает его. Поэтому, нам нужна ещё одна коллекция, где мы будем хранить исходные
-     * соединения, которые нужны будут для закртия в конце:
-     * <pre>{@code
-     *     // Объявляем список для закрытия соединений
-     *     private static List<Connection> sourceConnections;
-     * }</pre>
+     * Здесь мы должны пройтись по каждому соединению и закрыть его, но вызов метода {@code .close()} у выданного
+     * соединения ({@link PooledConnection}) возвращает его в пул, а не закрывает. Поэтому пул хранит исходные соединения отдельно и закрывает именно их.
+     * Если одно из соединений не закрылось, остальные всё равно будут закрыты.
      */
     public static void closePool() {
-        try {
-            for (Connection sourceConnection : sourceConnections) {
-                sourceConnection.close();
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        pool.close();
     }
 
     private static void loadDriver() {
@@ -0,0 +1,337 @@
+package util;
+
+import exception.ConnectionPoolException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <h1>Пул соединений</h1>
+ * Первая версия пула в {@link ConnectionManager} была просто очередью из пяти соединений: {@code pool.take()} ждал
+ * бесконечно, соединения никогда не проверялись и не заменялись, а если база разорвала соединение, то оно так и
+ * оставалось в пуле сломанным. Здесь то же самое, но ближе к тому, как устроены настоящие пулы:
+ * <ul>
+ *     <li>соединение ждём не дольше {@code acquireTimeout}, после чего падаем с {@link ConnectionPoolException}</li>
+ *     <li>на старте открываем только {@code minSize} соединений, остальные (до {@code maxSize}) - по мере нагрузки</li>
+ *     <li>перед выдачей соединение, которое простаивало, проверяется через {@code isValid()}, сломанное закрывается
+ *     и вместо него берётся/открывается другое</li>
+ *     <li>фоновый поток закрывает соединения, которые простаивают дольше {@code idleTimeout} или живут дольше
+ *     {@code maxLifetime}, и добирает пул до {@code minSize}</li>
+ *     <li>метрики ожиданий, таймаутов и количества активных/свободных соединений ({@link #stats()})</li>
+ * </ul>
+ * Количество одновременно выданных соединений ограничивает {@link Semaphore}, а свободные соединения лежат в деке и
+ * выдаются по принципу LIFO - последнее возвращённое соединение самое "свежее", и его не нужно лишний раз проверять.
+ * <br><br>
+ * Наружу отдаём не само соединение, а {@link PooledConnection}, у которого {@code close()} возвращает соединение в пул.
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Соединение, которое возвращали в пул совсем недавно, не проверяем - это лишний поход в базу.
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final PoolConfig config;
+    private final Supplier<Connection> connectionFactory;
+
+    private final BlockingDeque<PoolEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PoolEntry> entries = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+
+    public ConnectionPool(PoolConfig config, Supplier<Connection> connectionFactory) {
+        this.config = config;
+        this.connectionFactory = connectionFactory;
+        this.permits = new Semaphore(config.maxSize(), true);
+
+        try {
+            for (int i = 0; i < config.minSize(); i++) {
+                idle.offerLast(create());
+            }
+        } catch (RuntimeException e) {
+            // пул так и не заработал - уже открытые соединения закрываем, иначе они останутся висеть
+            idle.clear();
+            for (PoolEntry entry : entries) {
+                destroy(entry);
+            }
+            throw e;
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(
+                this::housekeep,
+                config.housekeepingPeriod(),
+                config.housekeepingPeriod(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * <h1>Достаём соединение из пула</h1>
+     * Если свободных соединений нет и пул ещё не достиг {@code maxSize} - открываем новое. Иначе ждём, пока кто-то
+     * вернёт соединение, но не дольше {@code acquireTimeout}.
+     *
+     * @return соединение, {@code close()} которого возвращает его обратно в пул
+     */
+    public Connection borrow() {
+        if (closed) {
+            throw new ConnectionPoolException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.acquireTimeout());
+        try {
+            if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw timeout(start);
+            }
+            try {
+                PoolEntry entry = takeUsable(start, timeoutNanos);
+                active.incrementAndGet();
+                acquired.increment();
+                recordWait(System.nanoTime() - start);
+                return new PooledConnection(entry, this);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionPoolException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    private PoolEntry takeUsable(long start, long timeoutNanos) throws InterruptedException {
+        while (true) {
+            PoolEntry entry = idle.pollFirst();
+            if (entry == null) {
+                entry = tryCreate();
+            }
+            if (entry == null) {
+                long remaining = timeoutNanos - (System.nanoTime() - start);
+                entry = idle.pollFirst(remaining, TimeUnit.NANOSECONDS);
+                if (entry == null) {
+                    throw timeout(start);
+                }
+            }
+            if (isUsable(entry)) {
+                return entry;
+            }
+            destroy(entry);
+        }
+    }
+
+    private boolean isUsable(PoolEntry entry) {
+        long now = System.nanoTime();
+        if (isExpired(entry, now)) {
+            return false;
+        }
+        if (now - entry.lastAccessed < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            int timeoutSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(config.validationTimeout()));
+            return entry.connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PoolEntry entry, long now) {
+        return config.maxLifetime() > 0
+               && now - entry.createdAt > TimeUnit.MILLISECONDS.toNanos(config.maxLifetime());
+    }
+
+    /**
+     * Возврат соединения в пул. Вызывается из {@code close()} выданного соединения.
+     *
+     * @param broken соединение не удалось вернуть в исходное состояние, обратно в пул его класть нельзя
+     */
+    void release(PoolEntry entry, boolean broken) {
+        active.decrementAndGet();
+        try {
+            if (broken || closed || isExpired(entry, System.nanoTime())) {
+                destroy(entry);
+            } else {
+                entry.lastAccessed = System.nanoTime();
+                idle.offerFirst(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Открываем новое соединение, если пул ещё не достиг {@code maxSize}, иначе возвращаем {@code null}.
+     */
+    private PoolEntry tryCreate() {
+        while (true) {
+            int current = total.get();
+            if (current >= config.maxSize()) {
+                return null;
+            }
+            if (total.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        return open();
+    }
+
+    private PoolEntry create() {
+        total.incrementAndGet();
+        return open();
+    }
+
+    private PoolEntry open() {
+        try {
+            StatementCache statementCache = new StatementCache(
+                    config.statementCacheSize(),
+                    statementCacheHits,
+                    statementCacheMisses,
+                    statementCacheEvictions
+            );
+            PoolEntry entry = new PoolEntry(connectionFactory.get(), statementCache);
+            entries.add(entry);
+            created.increment();
+            return entry;
+        } catch (RuntimeException e) {
+            total.decrementAndGet();
+            throw new ConnectionPoolException("Unable to open a connection", e);
+        }
+    }
+
+    private void destroy(PoolEntry entry) {
+        if (!entries.remove(entry)) {
+            return;
+        }
+        total.decrementAndGet();
+        destroyed.increment();
+        entry.statementCache.discardAll();
+        try {
+            entry.connection.close();
+        } catch (SQLException ignored) {
+            // соединение и так выбрасываем из пула
+        }
+    }
+
+    /**
+     * <h1>Фоновая чистка пула</h1>
+     * Закрываем свободные соединения, которые отжили своё, и добираем пул до {@code minSize}. Соединение убираем из
+     * деки через {@code remove()} - если его в этот момент кто-то забрал, то {@code remove()} вернёт false и мы его
+     * не трогаем.
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.idleTimeout());
+        for (PoolEntry entry : idle) {
+            boolean idleTooLong = config.idleTimeout() > 0
+                                  && now - entry.lastAccessed > idleTimeoutNanos
+                                  && total.get() > config.minSize();
+            if ((idleTooLong || isExpired(entry, now)) && idle.remove(entry)) {
+                destroy(entry);
+            }
+        }
+        try {
+            while (!closed && total.get() < config.minSize()) {
+                PoolEntry entry = tryCreate();
+                if (entry == null) {
+                    break;
+                }
+                idle.offerLast(entry);
+            }
+        } catch (ConnectionPoolException ignored) {
+            // база недоступна - попробуем на следующем проходе
+        }
+    }
+
+    private ConnectionPoolException timeout(long start) {
+        timeouts.increment();
+        recordWait(System.nanoTime() - start);
+        return new ConnectionPoolException(
+                "Connection is not available, request timed out after " + config.acquireTimeout() + "ms");
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    public PoolStats stats() {
+        return new PoolStats(
+                active.get(),
+                idle.size(),
+                total.get(),
+                acquired.sum(),
+                timeouts.sum(),
+                created.sum(),
+                destroyed.sum(),
+                totalWaitNanos.sum(),
+                maxWaitNanos.get(),
+                statementCacheHits.sum(),
+                statementCacheMisses.sum(),
+                statementCacheEvictions.sum()
+        );
+    }
+
+    public PoolConfig config() {
+        return config;
+    }
+
+    /**
+     * <h1>Закрытие пула</h1>
+     * Закрываем все физические соединения. Если какое-то из них не закрылось, всё равно закрываем остальные, а
+     * ошибки собираем в одно исключение.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        idle.clear();
+
+        SQLException failure = null;
+        for (PoolEntry entry : entries) {
+            entries.remove(entry);
+            entry.statementCache.discardAll();
+            try {
+                entry.connection.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        total.set(0);
+        if (failure != null) {
+            throw new ConnectionPoolException("Unable to close all pooled connections", failure);
+        }
+    }
+}
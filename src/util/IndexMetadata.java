@@ -0,0 +1,13 @@
+package util;
+
+import java.util.List;
+
+/**
+ * <h1>Индекс таблицы</h1>
+ *
+ * @param name    имя индекса
+ * @param unique  уникальный ли индекс
+ * @param columns колонки индекса в порядке их следования в индексе
+ */
+public record IndexMetadata(String name, boolean unique, List<String> columns) {
+}
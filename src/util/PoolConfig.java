@@ -0,0 +1,34 @@
+package util;
+
+/**
+ * <h1>Настройки пула соединений</h1>
+ * Все времена указываются в миллисекундах.
+ *
+ * @param minSize             сколько соединений держим открытыми всегда, даже если они простаивают
+ * @param maxSize             больше этого количества соединений пул не откроет
+ * @param acquireTimeout      сколько ждём свободное соединение, прежде чем упасть с ошибкой
+ * @param idleTimeout         сколько соединение может простаивать, прежде чем его закроют (если их больше minSize)
+ * @param maxLifetime         максимальное время жизни соединения, после него оно будет заменено новым
+ * @param validationTimeout   сколько ждём ответа от базы при проверке соединения
+ * @param housekeepingPeriod  как часто фоновый поток вычищает старые соединения и добирает пул до minSize
+ * @param statementCacheSize  сколько подготовленных запросов кешируем на каждое соединение, 0 - не кешируем
+ */
+public record PoolConfig(
+        int minSize,
+        int maxSize,
+        long acquireTimeout,
+        long idleTimeout,
+        long maxLifetime,
+        long validationTimeout,
+        long housekeepingPeriod,
+        int statementCacheSize
+) {
+    public PoolConfig {
+        if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package util;
+
+import java.sql.Connection;
+
+/**
+ * Физическое соединение, которое лежит в пуле, и служебная информация о нём.
+ */
+final class PoolEntry {
+    final Connection connection;
+    final long createdAt = System.nanoTime();
+    volatile long lastAccessed = createdAt;
+    final StatementCache statementCache;
+
+    PoolEntry(Connection connection, StatementCache statementCache) {
+        this.connection = connection;
+        this.statementCache = statementCache;
+    }
+}
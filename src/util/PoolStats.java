@@ -0,0 +1,42 @@
+package util;
+
+/**
+ * <h1>Снимок метрик пула соединений</h1>
+ *
+ * @param active         соединения, которые сейчас выданы
+ * @param idle           свободные соединения в пуле
+ * @param total          все открытые соединения
+ * @param acquired       сколько раз соединение было успешно выдано
+ * @param timeouts       сколько раз не дождались свободного соединения
+ * @param created        сколько физических соединений было открыто
+ * @param destroyed      сколько физических соединений было закрыто (истекли, сломались и т.д.)
+ * @param totalWaitNanos суммарное время ожидания соединения (включая ожидания, закончившиеся таймаутом)
+ * @param maxWaitNanos   самое долгое ожидание соединения
+ * @param statementCacheHits      сколько раз подготовленный запрос нашёлся в кеше
+ * @param statementCacheMisses    сколько раз подготовленный запрос пришлось создавать
+ * @param statementCacheEvictions сколько подготовленных запросов вытеснено из кеша и закрыто
+ */
+public record PoolStats(
+        int active,
+        int idle,
+        int total,
+        long acquired,
+        long timeouts,
+        long created,
+        long destroyed,
+        long totalWaitNanos,
+        long maxWaitNanos,
+        long statementCacheHits,
+        long statementCacheMisses,
+        long statementCacheEvictions
+) {
+    public double averageWaitMillis() {
+        long requests = acquired + timeouts;
+        return requests == 0 ? 0 : totalWaitNanos / 1_000_000.0 / requests;
+    }
+
+    public double statementCacheHitRatio() {
+        long lookups = statementCacheHits + statementCacheMisses;
+        return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+    }
+}
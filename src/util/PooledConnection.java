@@ -0,0 +1,497 @@
+package util;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <h1>Соединение, которое выдаёт пул</h1>
+ * Раньше каждое соединение оборачивалось в {@code java.lang.reflect.Proxy}:
+ * <pre>{@code
+ * (proxy, method, args) -> method.getName().equals("close")
+ *         ? pool.add((Connection) proxy)
+ *         : method.invoke(connection, args)
+ * }</pre>
+ * Т.е. на <b>каждый</b> вызов JDBC-метода приходилось сравнение строк и рефлексивный {@code method.invoke()}, а
+ * повторный {@code close()} клал одно и то же соединение в пул дважды. Здесь то же самое, но обычным классом: все
+ * методы просто вызывают исходное соединение напрямую.
+ * <br><br>
+ * Новая обёртка создаётся на каждую выдачу соединения из пула, поэтому после {@code close()} старая ссылка больше
+ * не работает (бросает {@link SQLException}), даже если это же физическое соединение уже выдали кому-то другому.
+ * <br><br>
+ * При возврате в пул откатываем незавершённую транзакцию и возвращаем autoCommit, readOnly, уровень изоляции,
+ * каталог, схему, holdability и сетевой таймаут в исходное состояние, чтобы следующий пользователь соединения не
+ * получил чужие настройки. Исходное значение запоминаем при первом изменении настройки.
+ * <h2>Кеш подготовленных запросов</h2>
+ * {@code prepareStatement()} сначала ищет готовый statement в {@link StatementCache} физического соединения и
+ * отдаёт его обёрнутым в {@link CachedPreparedStatement}. Statement-ы, которые забыли закрыть, возвращаются в кеш при
+ * закрытии соединения.
+ * <h2>Соединение транзакции</h2>
+ * Пока соединение привязано к транзакции {@link TransactionManager} ({@link #setManaged(boolean)}), его получает
+ * каждый DAO внутри этой транзакции. Поэтому {@code close()}, {@code commit()}, {@code rollback()} и
+ * {@code setAutoCommit()} от DAO ничего не делают - транзакцию завершает и соединение возвращает в пул только
+ * {@link TransactionManager}.
+ */
+final class PooledConnection implements Connection {
+
+    private final PoolEntry entry;
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final List<CachedPreparedStatement> openStatements = new ArrayList<>();
+
+    private boolean managed;
+    private boolean autoCommitChanged;
+    private boolean originalAutoCommit;
+    private boolean readOnlyChanged;
+    private boolean originalReadOnly;
+    private boolean isolationChanged;
+    private int originalIsolation;
+    private boolean catalogChanged;
+    private String originalCatalog;
+    private boolean schemaChanged;
+    private String originalSchema;
+    private boolean holdabilityChanged;
+    private int originalHoldability;
+    private boolean networkTimeoutChanged;
+    private int originalNetworkTimeout;
+
+    PooledConnection(PoolEntry entry, ConnectionPool pool) {
+        this.entry = entry;
+        this.pool = pool;
+        this.connection = entry.connection;
+    }
+
+    private Connection connection() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection is closed");
+        }
+        return connection;
+    }
+
+    /**
+     * Привязываем соединение к транзакции или отвязываем его перед завершением транзакции.
+     */
+    void setManaged(boolean managed) {
+        this.managed = managed;
+    }
+
+    /**
+     * Вместо закрытия возвращаем соединение в пул. Повторный вызов ничего не делает.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (managed) {
+            return;
+        }
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        boolean broken = false;
+        try {
+            for (CachedPreparedStatement statement : List.copyOf(openStatements)) {
+                statement.close();
+            }
+            reset();
+        } catch (SQLException e) {
+            broken = true;
+        } finally {
+            pool.release(entry, broken);
+        }
+    }
+
+    private void reset() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            // Незавершённая транзакция не должна достаться следующему пользователю соединения
+            connection.rollback();
+        }
+        if (autoCommitChanged) {
+            connection.setAutoCommit(originalAutoCommit);
+        }
+        if (readOnlyChanged) {
+            connection.setReadOnly(originalReadOnly);
+        }
+        if (isolationChanged) {
+            connection.setTransactionIsolation(originalIsolation);
+        }
+        if (catalogChanged) {
+            connection.setCatalog(originalCatalog);
+        }
+        if (schemaChanged) {
+            connection.setSchema(originalSchema);
+        }
+        if (holdabilityChanged) {
+            connection.setHoldability(originalHoldability);
+        }
+        if (networkTimeoutChanged) {
+            // executor драйверу нужен только для того, чтобы прервать соединение по таймауту
+            connection.setNetworkTimeout(Runnable::run, originalNetworkTimeout);
+        }
+    }
+
+    private PreparedStatement prepare(StatementKey key, StatementFactory factory) throws SQLException {
+        Connection connection = connection();
+        PreparedStatement statement = entry.statementCache.take(key);
+        if (statement == null) {
+            statement = factory.create(connection);
+        }
+        CachedPreparedStatement cached = new CachedPreparedStatement(statement, key, this);
+        openStatements.add(cached);
+        return cached;
+    }
+
+    /**
+     * Вызывается из {@code close()} у {@link CachedPreparedStatement}.
+     */
+    void release(CachedPreparedStatement statement) throws SQLException {
+        openStatements.remove(statement);
+        if (statement.reset()) {
+            entry.statementCache.offer(statement.key(), statement.delegate());
+        } else {
+            statement.delegate().close();
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepare(StatementKey.of(sql), connection -> connection.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return prepare(
+                new StatementKey(sql, resultSetType, resultSetConcurrency, -1, -1, null),
+                connection -> connection.prepareStatement(sql, resultSetType, resultSetConcurrency)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                                              int resultSetHoldability) throws SQLException {
+        return prepare(
+                new StatementKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability, -1, null),
+                connection -> connection.prepareStatement(sql, resultSetType, resultSetConcurrency,
+                        resultSetHoldability)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepare(
+                new StatementKey(sql, -1, -1, -1, autoGeneratedKeys, null),
+                connection -> connection.prepareStatement(sql, autoGeneratedKeys)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return prepare(
+                new StatementKey(sql, -1, -1, -1, -1, List.of(columnNames)),
+                connection -> connection.prepareStatement(sql, columnNames)
+        );
+    }
+
+    /**
+     * Такие statement-ы встречаются редко, поэтому не кешируем их.
+     */
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return connection().prepareStatement(sql, columnIndexes);
+    }
+
+    @FunctionalInterface
+    private interface StatementFactory {
+        PreparedStatement create(Connection connection) throws SQLException;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed.get() || connection.isClosed();
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            connection.abort(executor);
+        } finally {
+            pool.release(entry, true);
+        }
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        Connection connection = connection();
+        if (managed) {
+            return;
+        }
+        if (!autoCommitChanged) {
+            originalAutoCommit = connection.getAutoCommit();
+            autoCommitChanged = true;
+        }
+        connection.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        Connection connection = connection();
+        if (!readOnlyChanged) {
+            originalReadOnly = connection.isReadOnly();
+            readOnlyChanged = true;
+        }
+        connection.setReadOnly(readOnly);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        Connection connection = connection();
+        if (!isolationChanged) {
+            originalIsolation = connection.getTransactionIsolation();
+            isolationChanged = true;
+        }
+        connection.setTransactionIsolation(level);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        connection.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        connection.setClientInfo(properties);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : connection().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || connection().isWrapperFor(iface);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return connection().createStatement();
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return connection().prepareCall(sql);
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return connection().nativeSQL(sql);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return connection().getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        Connection connection = connection();
+        if (!managed) {
+            connection.commit();
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        Connection connection = connection();
+        if (!managed) {
+            connection.rollback();
+        }
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return connection().getMetaData();
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return connection().isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        Connection connection = connection();
+        if (!catalogChanged) {
+            originalCatalog = connection.getCatalog();
+            catalogChanged = true;
+        }
+        connection.setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return connection().getCatalog();
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return connection().getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return connection().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        connection().clearWarnings();
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return connection().createStatement(resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return connection().prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return connection().getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        connection().setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        Connection connection = connection();
+        if (!holdabilityChanged) {
+            originalHoldability = connection.getHoldability();
+            holdabilityChanged = true;
+        }
+        connection.setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return connection().getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return connection().setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return connection().setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        connection().rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        connection().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return connection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return connection().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return connection().createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return connection().createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return connection().createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return connection().createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return connection().isValid(timeout);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return connection().getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return connection().getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return connection().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return connection().createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        Connection connection = connection();
+        if (!schemaChanged) {
+            originalSchema = connection.getSchema();
+            schemaChanged = true;
+        }
+        connection.setSchema(schema);
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return connection().getSchema();
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        Connection connection = connection();
+        if (!networkTimeoutChanged) {
+            originalNetworkTimeout = connection.getNetworkTimeout();
+            networkTimeoutChanged = true;
+        }
+        connection.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return connection().getNetworkTimeout();
+    }
+}
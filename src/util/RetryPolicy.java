@@ -0,0 +1,215 @@
+package util;
+
+import exception.DaoException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Повтор операций при конфликтах в базе</h1>
+ * Когда несколько транзакций одновременно продают места на один перелёт, postgres отменяет часть из них:
+ * <ul>
+ *     <li>{@code 40001} serialization_failure - транзакцию нельзя упорядочить с другими (уровни
+ *     {@code REPEATABLE READ} и {@code SERIALIZABLE})</li>
+ *     <li>{@code 40P01} deadlock_detected - две транзакции ждут блокировки друг друга, одну из них база отменяет</li>
+ * </ul>
+ * Это не ошибка в данных и не ошибка в коде: та же операция, выполненная заново, скорее всего пройдёт. Поэтому
+ * операцию повторяем до {@code maxAttempts} раз. Пауза между попытками растёт экспоненциально (но не больше
+ * {@code maxBackoff}), а сама пауза выбирается случайно от нуля до этой границы (<i>full jitter</i>) - иначе
+ * отменённые вместе транзакции повторятся одновременно и снова помешают друг другу.
+ * <pre>{@code
+ * RetryPolicy.defaultPolicy().execute(() -> ticketDao.update(ticket));
+ * }</pre>
+ * Если у потока уже есть транзакция {@link TransactionManager}, то операцию <b>не</b> повторяем: после ошибки вся
+ * внешняя транзакция уже отменена, и повторять нужно её целиком - это сделает сам {@link TransactionManager}.
+ * <br><br>
+ * Настройки политики по умолчанию (времена в миллисекундах):
+ * <pre>{@code
+ * db.retry.max.attempts=5
+ * db.retry.initial.backoff=10
+ * db.retry.max.backoff=1000
+ * }</pre>
+ */
+public final class RetryPolicy {
+    public static final Set<String> TRANSIENT_SQL_STATES = Set.of("40001", "40P01");
+
+    /**
+     * Без повторов - операция выполняется один раз.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, TRANSIENT_SQL_STATES);
+
+    private static final String MAX_ATTEMPTS_KEY = "db.retry.max.attempts";
+    private static final String INITIAL_BACKOFF_KEY = "db.retry.initial.backoff";
+    private static final String MAX_BACKOFF_KEY = "db.retry.max.backoff";
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_INITIAL_BACKOFF = 10;
+    private static final long DEFAULT_MAX_BACKOFF = 1_000;
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final Set<String> sqlStates;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder totalBackoffNanos = new LongAdder();
+
+    /**
+     * @param maxAttempts    сколько раз всего выполняем операцию, включая первую попытку
+     * @param initialBackoff верхняя граница паузы перед первым повтором, дальше она удваивается
+     * @param maxBackoff     больше этого пауза не растёт
+     * @param sqlStates      SQLState ошибок, после которых операцию можно повторить
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Set<String> sqlStates) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive: " + maxAttempts);
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("Invalid backoff: initial=" + initialBackoff + ", max=" + maxBackoff);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.sqlStates = Set.copyOf(sqlStates);
+    }
+
+    /**
+     * Политика из {@code application.properties}, одна на всё приложение - поэтому и метрики у неё общие.
+     */
+    public static RetryPolicy defaultPolicy() {
+        return Default.INSTANCE;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Выполняем операцию, повторяя её при временных ошибках. Внутри транзакции {@link TransactionManager} - ровно
+     * один раз.
+     *
+     * @return результат операции
+     */
+    public <T> T execute(RetryableOperation<T> operation) {
+        if (TransactionManager.isActive()) {
+            return call(operation);
+        }
+        return executeWithRetries(operation);
+    }
+
+    public void run(RetryableAction action) {
+        execute(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Повторяем, даже если у потока есть транзакция. Нужно самому {@link TransactionManager} для новой транзакции.
+     */
+    <T> T executeWithRetries(RetryableOperation<T> operation) {
+        executions.increment();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = call(operation);
+                if (attempt > 1) {
+                    recovered.increment();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                retries.increment();
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Ищем SQLState по всей цепочке причин: DAO заворачивают {@link SQLException} в
+     * {@link DaoException}.
+     */
+    public boolean isRetryable(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlStates.contains(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public RetryStats stats() {
+        return new RetryStats(
+                executions.sum(),
+                retries.sum(),
+                recovered.sum(),
+                exhausted.sum(),
+                totalBackoffNanos.sum()
+        );
+    }
+
+    private static <T> T call(RetryableOperation<T> operation) {
+        try {
+            return operation.execute();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    /**
+     * Если поток прервали во время паузы, то больше не повторяем и бросаем исходную ошибку.
+     */
+    private void backoff(int attempt, RuntimeException failure) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        if (ceiling <= 0) {
+            return;
+        }
+        long pause = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        totalBackoffNanos.add(pause);
+        try {
+            TimeUnit.NANOSECONDS.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertiesUtil.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Properties читаем при первом обращении к политике по умолчанию, а не при загрузке класса.
+     */
+    private static final class Default {
+        private static final RetryPolicy INSTANCE = new RetryPolicy(
+                (int) getLong(MAX_ATTEMPTS_KEY, DEFAULT_MAX_ATTEMPTS),
+                Duration.ofMillis(getLong(INITIAL_BACKOFF_KEY, DEFAULT_INITIAL_BACKOFF)),
+                Duration.ofMillis(getLong(MAX_BACKOFF_KEY, DEFAULT_MAX_BACKOFF)),
+                TRANSIENT_SQL_STATES
+        );
+    }
+
+    @FunctionalInterface
+    public interface RetryableOperation<T> {
+        T execute() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RetryableAction {
+        void run() throws SQLException;
+    }
+}
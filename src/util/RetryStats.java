@@ -0,0 +1,22 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок метрик {@link RetryPolicy}.
+ *
+ * @param executions        сколько операций выполнялось через политику
+ * @param retries           сколько было повторов всего
+ * @param recovered         сколько операций выполнилось успешно, но не с первой попытки
+ * @param exhausted         сколько операций так и не выполнилось за {@code maxAttempts} попыток
+ * @param totalBackoffNanos сколько всего времени потрачено на паузы между попытками
+ */
+public record RetryStats(long executions, long retries, long recovered, long exhausted, long totalBackoffNanos) {
+    public double retriesPerExecution() {
+        return executions == 0 ? 0 : (double) retries / executions;
+    }
+
+    public long totalBackoffMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalBackoffNanos);
+    }
+}
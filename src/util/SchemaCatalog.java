@@ -0,0 +1,209 @@
+package util;
+
+import exception.DaoException;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Метаданные схемы в памяти</h1>
+ * Каждый вызов {@link DatabaseMetaData} - это запрос в системные каталоги postgres. В {@code JdbcRunner} раньше
+ * {@code getSchemas()} и {@code getTables()} вызывались для каждого каталога и каждой схемы, хотя нужна была одна
+ * схема. Здесь схема читается один раз при первом обращении:
+ * <ul>
+ *     <li>таблицы - один {@code getTables()}</li>
+ *     <li>колонки всех таблиц - один {@code getColumns()} с шаблоном {@code %}</li>
+ *     <li>первичные ключи и индексы - {@code getPrimaryKeys()} и {@code getIndexInfo()} на каждую таблицу (эти
+ *     методы шаблонов не принимают)</li>
+ * </ul>
+ * Дальше все ответы берутся из памяти. Если схема поменялась (например, отработал {@code ALTER TABLE}), нужно
+ * явно вызвать {@link #refresh()}.
+ * <pre>{@code
+ * SchemaCatalog.getInstance().table("ticket").map(table -> table.hasColumn("version"));
+ * }</pre>
+ * Имена таблиц и колонок ищутся без учёта регистра.
+ */
+public final class SchemaCatalog {
+    private static final String DEFAULT_SCHEMA = "flight_storage";
+
+    private static final SchemaCatalog INSTANCE = new SchemaCatalog(DEFAULT_SCHEMA);
+
+    private final String schema;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Map<String, TableMetadata> tables;
+
+    public SchemaCatalog(String schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * @return каталог схемы {@code flight_storage}
+     */
+    public static SchemaCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    public String schema() {
+        return schema;
+    }
+
+    /**
+     * @return таблицы схемы по именам (в нижнем регистре), в алфавитном порядке
+     */
+    public Map<String, TableMetadata> tables() {
+        Map<String, TableMetadata> current = tables;
+        if (current != null) {
+            return current;
+        }
+        lock.lock();
+        try {
+            if (tables == null) {
+                tables = load();
+            }
+            return tables;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<TableMetadata> table(String tableName) {
+        return Optional.ofNullable(tables().get(tableName.toLowerCase()));
+    }
+
+    public boolean hasColumn(String tableName, String columnName) {
+        return table(tableName).map(table -> table.hasColumn(columnName)).orElse(false);
+    }
+
+    /**
+     * Проверка перед запросом, которому нужна колонка, добавляемая отдельной миграцией: вместо непонятной ошибки из
+     * базы сразу говорим, какой колонки не хватает.
+     *
+     * @throws DaoException если таблицы или колонки нет
+     */
+    public void requireColumn(String tableName, String columnName) {
+        if (!hasColumn(tableName, columnName)) {
+            throw new DaoException("Column %s.%s.%s does not exist".formatted(schema, tableName, columnName));
+        }
+    }
+
+    /**
+     * То же, что {@link #requireColumn(String, String)}, но для уникального индекса, которого требует
+     * {@code ON CONFLICT}.
+     *
+     * @throws DaoException если таблицы или уникального индекса по этим колонкам нет
+     */
+    public void requireUniqueIndex(String tableName, String... columnNames) {
+        if (!table(tableName).map(table -> table.hasUniqueIndex(columnNames)).orElse(false)) {
+            throw new DaoException("Unique index on %s.%s %s does not exist"
+                    .formatted(schema, tableName, Arrays.toString(columnNames)));
+        }
+    }
+
+    /**
+     * Перечитываем схему из базы. Пока идёт чтение, остальные потоки видят прежнюю версию.
+     */
+    public void refresh() {
+        lock.lock();
+        try {
+            tables = load();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, TableMetadata> load() {
+        try (Connection connection = ConnectionManager.get()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, List<ColumnMetadata>> columns = loadColumns(metaData);
+            Map<String, TableMetadata> loaded = new TreeMap<>();
+            for (String table : loadTableNames(metaData)) {
+                String key = table.toLowerCase();
+                loaded.put(key, new TableMetadata(
+                        table,
+                        columns.getOrDefault(key, List.of()),
+                        loadPrimaryKey(metaData, table),
+                        loadIndexes(metaData, table)
+                ));
+            }
+            return Collections.unmodifiableMap(loaded);
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private List<String> loadTableNames(DatabaseMetaData metaData) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (ResultSet tables = metaData.getTables(null, schema, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                names.add(tables.getString("TABLE_NAME"));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Колонки всех таблиц одним запросом. Драйвер сортирует их по таблице и {@code ORDINAL_POSITION}, поэтому номер
+     * колонки в {@code SELECT *} - это просто порядковый номер внутри таблицы.
+     */
+    private Map<String, List<ColumnMetadata>> loadColumns(DatabaseMetaData metaData) throws SQLException {
+        Map<String, List<ColumnMetadata>> columns = new LinkedHashMap<>();
+        try (ResultSet resultSet = metaData.getColumns(null, schema, "%", "%")) {
+            while (resultSet.next()) {
+                List<ColumnMetadata> tableColumns = columns.computeIfAbsent(
+                        resultSet.getString("TABLE_NAME").toLowerCase(), table -> new ArrayList<>());
+                tableColumns.add(new ColumnMetadata(
+                        resultSet.getString("COLUMN_NAME"),
+                        tableColumns.size() + 1,
+                        resultSet.getInt("DATA_TYPE"),
+                        resultSet.getString("TYPE_NAME"),
+                        resultSet.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls
+                ));
+            }
+        }
+        return columns;
+    }
+
+    private List<String> loadPrimaryKey(DatabaseMetaData metaData, String table) throws SQLException {
+        Map<Short, String> keyColumns = new TreeMap<>();
+        try (ResultSet resultSet = metaData.getPrimaryKeys(null, schema, table)) {
+            while (resultSet.next()) {
+                keyColumns.put(resultSet.getShort("KEY_SEQ"), resultSet.getString("COLUMN_NAME"));
+            }
+        }
+        return List.copyOf(keyColumns.values());
+    }
+
+    private List<IndexMetadata> loadIndexes(DatabaseMetaData metaData, String table) throws SQLException {
+        Map<String, Boolean> unique = new LinkedHashMap<>();
+        Map<String, Map<Short, String>> indexColumns = new LinkedHashMap<>();
+        try (ResultSet resultSet = metaData.getIndexInfo(null, schema, table, false, true)) {
+            while (resultSet.next()) {
+                String name = resultSet.getString("INDEX_NAME");
+                if (name == null || resultSet.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                    continue;
+                }
+                unique.put(name, !resultSet.getBoolean("NON_UNIQUE"));
+                Map<Short, String> columns = indexColumns.computeIfAbsent(name, index -> new TreeMap<>());
+                String column = resultSet.getString("COLUMN_NAME");
+                if (column != null) {
+                    columns.put(resultSet.getShort("ORDINAL_POSITION"), column);
+                }
+            }
+        }
+        List<IndexMetadata> indexes = new ArrayList<>(unique.size());
+        unique.forEach((name, isUnique) ->
+                indexes.add(new IndexMetadata(name, isUnique, List.copyOf(indexColumns.get(name).values()))));
+        return indexes;
+    }
+}
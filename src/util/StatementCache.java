@@ -0,0 +1,90 @@
+package util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Кеш подготовленных запросов одного физического соединения</h1>
+ * Каждый метод DAO делает {@code connection.prepareStatement(SQL)} с одними и теми же константами, и каждый раз база
+ * заново разбирает и планирует запрос. Поэтому {@code close()} у {@link CachedPreparedStatement} не закрывает
+ * statement, а кладёт его сюда, и следующий {@code prepareStatement()} с тем же SQL достаёт уже готовый.
+ * <br><br>
+ * В кеше лежат только свободные statement-ы: {@link #take(StatementKey)} забирает его из кеша, поэтому если один и тот
+ * же SQL нужен дважды одновременно, второй просто будет создан заново. Размер ограничен, вытесняется тот, кого дольше
+ * всех не использовали (LRU на {@link LinkedHashMap} с {@code accessOrder = true}), и вытесненный statement закрывается
+ * по-настоящему, чтобы освободить его и на стороне сервера.
+ * <br><br>
+ * Соединением в каждый момент пользуется только один поток, поэтому синхронизация здесь не нужна.
+ */
+final class StatementCache {
+
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final Map<StatementKey, PreparedStatement> statements;
+
+    StatementCache(int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                StatementCache.this.evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return готовый statement или {@code null}, если его нужно создать
+     */
+    PreparedStatement take(StatementKey key) {
+        if (maxSize == 0) {
+            return null;
+        }
+        PreparedStatement statement = statements.remove(key);
+        if (statement == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return statement;
+    }
+
+    /**
+     * Возвращаем statement в кеш. Если такой же уже лежит в кеше (SQL использовали дважды одновременно), то лишний
+     * закрываем.
+     */
+    void offer(StatementKey key, PreparedStatement statement) {
+        if (maxSize == 0 || statements.containsKey(key)) {
+            closeQuietly(statement);
+            return;
+        }
+        statements.put(key, statement);
+    }
+
+    /**
+     * Соединение закрывается, а вместе с ним и все его statement-ы, поэтому просто забываем о них.
+     */
+    void discardAll() {
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // statement и так выбрасываем
+        }
+    }
+}
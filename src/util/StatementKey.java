@@ -0,0 +1,22 @@
+package util;
+
+import java.util.List;
+
+/**
+ * Ключ кеша подготовленных запросов: один и тот же SQL с разными параметрами {@code ResultSet} или разным способом
+ * получения сгенерированных ключей - это разные {@code PreparedStatement}.
+ * <br>
+ * {@code -1} означает, что параметр не указывали и драйвер использует значение по умолчанию.
+ */
+record StatementKey(
+        String sql,
+        int resultSetType,
+        int resultSetConcurrency,
+        int resultSetHoldability,
+        int autoGeneratedKeys,
+        List<String> columnNames
+) {
+    static StatementKey of(String sql) {
+        return new StatementKey(sql, -1, -1, -1, -1, null);
+    }
+}
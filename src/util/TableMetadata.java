@@ -0,0 +1,83 @@
+package util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>Таблица схемы</h1>
+ * Колонки ищутся по имени без учёта регистра - так же, как их ищет {@code resultSet.getXxx("column")}. Поиск -
+ * обычный {@code HashMap}, в базу при этом никто не ходит.
+ */
+public final class TableMetadata {
+    private final String name;
+    private final List<ColumnMetadata> columns;
+    private final List<String> primaryKey;
+    private final List<IndexMetadata> indexes;
+    private final Map<String, ColumnMetadata> columnsByName = new LinkedHashMap<>();
+
+    /**
+     * @param primaryKey колонки первичного ключа в порядке их следования в ключе
+     */
+    public TableMetadata(String name, List<ColumnMetadata> columns, List<String> primaryKey,
+                         List<IndexMetadata> indexes) {
+        this.name = name;
+        this.columns = List.copyOf(columns);
+        this.primaryKey = List.copyOf(primaryKey);
+        this.indexes = List.copyOf(indexes);
+        for (ColumnMetadata column : this.columns) {
+            columnsByName.put(column.name().toLowerCase(), column);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<ColumnMetadata> columns() {
+        return columns;
+    }
+
+    public List<String> primaryKey() {
+        return primaryKey;
+    }
+
+    public List<IndexMetadata> indexes() {
+        return indexes;
+    }
+
+    public Optional<ColumnMetadata> column(String columnName) {
+        return Optional.ofNullable(columnsByName.get(columnName.toLowerCase()));
+    }
+
+    public boolean hasColumn(String columnName) {
+        return columnsByName.containsKey(columnName.toLowerCase());
+    }
+
+    /**
+     * Есть ли уникальный индекс ровно по этим колонкам (в любом порядке). Такой индекс нужен, например, для
+     * {@code ON CONFLICT (columns)}.
+     */
+    public boolean hasUniqueIndex(String... columnNames) {
+        Set<String> expected = lowerCase(Arrays.asList(columnNames));
+        return indexes.stream().anyMatch(index -> index.unique() && lowerCase(index.columns()).equals(expected));
+    }
+
+    private static Set<String> lowerCase(List<String> names) {
+        return names.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    }
+
+    public List<String> columnNames() {
+        return List.copyOf(columnsByName.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return "TableMetadata{name=%s, columns=%s, primaryKey=%s, indexes=%s}"
+                .formatted(name, columnNames(), primaryKey, indexes);
+    }
+}
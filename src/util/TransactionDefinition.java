@@ -0,0 +1,62 @@
+package util;
+
+import java.sql.Connection;
+
+/**
+ * <h1>Настройки транзакции</h1>
+ * <pre>{@code
+ * TransactionDefinition.DEFAULT.readOnly(true)
+ * TransactionDefinition.DEFAULT.isolation(Connection.TRANSACTION_SERIALIZABLE).retryPolicy(RetryPolicy.NONE)
+ * TransactionDefinition.DEFAULT.propagation(Propagation.REQUIRES_NEW)
+ * }</pre>
+ *
+ * @param propagation что делать, если у потока уже есть транзакция
+ * @param readOnly    транзакция только читает, база может не готовиться к изменениям
+ * @param isolation   уровень изоляции из констант {@link Connection}, {@code -1} - уровень соединения по умолчанию
+ * @param retryPolicy как повторяем транзакцию, если база отменила её из-за конфликта сериализации или deadlock-а
+ */
+public record TransactionDefinition(
+        Propagation propagation,
+        boolean readOnly,
+        int isolation,
+        RetryPolicy retryPolicy
+) {
+    public static final TransactionDefinition DEFAULT =
+            new TransactionDefinition(Propagation.REQUIRED, false, -1, RetryPolicy.defaultPolicy());
+
+    public TransactionDefinition {
+        if (propagation == null) {
+            throw new IllegalArgumentException("Propagation must not be null");
+        }
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must not be null");
+        }
+    }
+
+    public TransactionDefinition propagation(Propagation propagation) {
+        return new TransactionDefinition(propagation, readOnly, isolation, retryPolicy);
+    }
+
+    public TransactionDefinition readOnly(boolean readOnly) {
+        return new TransactionDefinition(propagation, readOnly, isolation, retryPolicy);
+    }
+
+    public TransactionDefinition isolation(int isolation) {
+        return new TransactionDefinition(propagation, readOnly, isolation, retryPolicy);
+    }
+
+    public TransactionDefinition retryPolicy(RetryPolicy retryPolicy) {
+        return new TransactionDefinition(propagation, readOnly, isolation, retryPolicy);
+    }
+
+    public enum Propagation {
+        /**
+         * Участвуем в текущей транзакции, а если её нет - начинаем новую
+         */
+        REQUIRED,
+        /**
+         * Всегда новая транзакция на отдельном соединении, текущая (если есть) ждёт её завершения
+         */
+        REQUIRES_NEW
+    }
+}
@@ -0,0 +1,205 @@
+package util;
+
+import exception.DaoException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Транзакции без ручного setAutoCommit/commit/rollback</h1>
+ * В {@code TransactionRunner} транзакция делается руками: выключить autoCommit, выполнить запросы, commit, при ошибке
+ * rollback и в конце закрыть соединение. А чтобы два DAO работали в одной транзакции, соединение приходится
+ * передавать параметром, как в {@code FlightDao.findById(Long key, Connection connection)}.
+ * <br><br>
+ * Здесь соединение транзакции привязывается к текущему потоку через {@link ThreadLocal}, и
+ * {@link ConnectionManager#get()} внутри транзакции возвращает именно его. Поэтому DAO не меняются:
+ * <pre>{@code
+ * TransactionManager.inTransaction(() -> {
+ *     Flight flight = flightDao.save(newFlight);
+ *     ticketDao.saveAll(tickets(flight));
+ *     return flight;
+ * });
+ * }</pre>
+ * {@code close()}, {@code commit()} и {@code rollback()}, которые вызывают сами DAO, на соединении транзакции ничего
+ * не делают: транзакцию завершает только {@code inTransaction()} - commit, если callback отработал, и rollback, если
+ * он бросил исключение.
+ * <br><br>
+ * У каждого виртуального потока свои {@link ThreadLocal}, поэтому привязка работает и для них. {@code ScopedValue}
+ * подошёл бы лучше, но в JDK этого проекта он ещё preview. Задачи, запущенные в других потоках (например,
+ * {@code AsyncDao}), в транзакции не участвуют.
+ * <h2>Повтор при конфликте сериализации</h2>
+ * На уровне {@code SERIALIZABLE} (и при некоторых конфликтах на {@code REPEATABLE READ}) postgres может отменить
+ * транзакцию с SQLState {@code 40001}, а при deadlock-е - с {@code 40P01}. Её нужно просто выполнить заново, поэтому
+ * новая транзакция выполняется через {@link RetryPolicy} из {@link TransactionDefinition}. Транзакцию, которая
+ * участвует во внешней, не повторяем - после ошибки внешняя транзакция всё равно уже отменена, повторять нужно её
+ * целиком.
+ * <h2>Действия после commit</h2>
+ * Некоторые действия можно выполнять только с закоммиченными данными - например, класть значение в кеш, общий для
+ * всех потоков: если транзакция откатится, то в кеше останется то, чего в базе нет. Такие действия регистрируются через
+ * {@link #afterCommit(Runnable)} и выполняются только после успешного commit; при откате (и перед повтором)
+ * они отбрасываются.
+ */
+public final class TransactionManager {
+    private static final ThreadLocal<PooledConnection> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<List<Runnable>> AFTER_COMMIT = new ThreadLocal<>();
+
+    private TransactionManager() {
+    }
+
+    public static <T> T inTransaction(TransactionCallback<T> callback) {
+        return inTransaction(TransactionDefinition.DEFAULT, callback);
+    }
+
+    /**
+     * Вариант для кода, который ничего не возвращает.
+     */
+    public static void runInTransaction(TransactionAction action) {
+        runInTransaction(TransactionDefinition.DEFAULT, action);
+    }
+
+    public static void runInTransaction(TransactionDefinition definition, TransactionAction action) {
+        inTransaction(definition, () -> {
+            action.execute();
+            return null;
+        });
+    }
+
+    /**
+     * <h1>Выполняем callback в транзакции</h1>
+     * С {@code REQUIRED} внутри уже открытой транзакции callback просто выполняется в ней (настройки
+     * {@code definition} в этом случае не применяются). Иначе берём соединение из пула, привязываем его к потоку,
+     * выполняем callback и завершаем транзакцию.
+     *
+     * @return результат callback
+     */
+    public static <T> T inTransaction(TransactionDefinition definition, TransactionCallback<T> callback) {
+        if (definition.propagation() == TransactionDefinition.Propagation.REQUIRED && isActive()) {
+            return execute(callback);
+        }
+        return definition.retryPolicy().executeWithRetries(() -> executeInNewTransaction(definition, callback));
+    }
+
+    /**
+     * @return есть ли у текущего потока транзакция
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Выполнить {@code action} после commit текущей транзакции. Если транзакции нет, то данные уже закоммичены
+     * (autoCommit), и {@code action} выполняется сразу. Транзакция, участвующая во внешней ({@code REQUIRED}),
+     * регистрирует действие во внешней - выполнится оно после её commit.
+     */
+    public static void afterCommit(Runnable action) {
+        List<Runnable> actions = AFTER_COMMIT.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    /**
+     * Соединение транзакции текущего потока или {@code null}, если транзакции нет.
+     */
+    static PooledConnection currentConnection() {
+        return CURRENT.get();
+    }
+
+    private static <T> T executeInNewTransaction(TransactionDefinition definition, TransactionCallback<T> callback) {
+        PooledConnection outer = CURRENT.get();
+        List<Runnable> outerActions = AFTER_COMMIT.get();
+        List<Runnable> actions = new ArrayList<>();
+        PooledConnection connection = ConnectionManager.borrow();
+        T result;
+        try {
+            begin(connection, definition);
+            CURRENT.set(connection);
+            AFTER_COMMIT.set(actions);
+            try {
+                result = execute(callback);
+            } catch (RuntimeException | Error e) {
+                connection.setManaged(false);
+                rollback(connection, e);
+                throw e;
+            }
+            connection.setManaged(false);
+            commit(connection);
+        } finally {
+            if (outer != null) {
+                CURRENT.set(outer);
+                AFTER_COMMIT.set(outerActions);
+            } else {
+                CURRENT.remove();
+                AFTER_COMMIT.remove();
+            }
+            connection.setManaged(false);
+            close(connection);
+        }
+        // Транзакция закоммичена, соединение вернулось в пул
+        actions.forEach(Runnable::run);
+        return result;
+    }
+
+    private static void begin(PooledConnection connection, TransactionDefinition definition) {
+        try {
+            connection.setAutoCommit(false);
+            if (definition.readOnly()) {
+                connection.setReadOnly(true);
+            }
+            if (definition.isolation() != -1) {
+                connection.setTransactionIsolation(definition.isolation());
+            }
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+        connection.setManaged(true);
+    }
+
+    private static <T> T execute(TransactionCallback<T> callback) {
+        try {
+            return callback.execute();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    private static void commit(PooledConnection connection) {
+        try {
+            connection.commit();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    /**
+     * Ошибку отката не бросаем, а добавляем к исходной - она важнее.
+     */
+    private static void rollback(PooledConnection connection, Throwable failure) {
+        try {
+            connection.rollback();
+        } catch (SQLException throwables) {
+            failure.addSuppressed(throwables);
+        }
+    }
+
+    private static void close(PooledConnection connection) {
+        try {
+            connection.close();
+        } catch (SQLException throwables) {
+            throw new DaoException(throwables);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T execute() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface TransactionAction {
+        void execute() throws SQLException;
+    }
+}